@@ -0,0 +1,22 @@
+package com.doctusoft.hibernate.extras.benchmarks;
+
+import org.hibernate.dialect.DerbyTenSevenDialect;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.HSQLDialect;
+
+public enum Database {
+    
+    H2("jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1", H2Dialect.class),
+    HSQLDB("jdbc:hsqldb:mem:bench", HSQLDialect.class),
+    DERBY("jdbc:derby:memory:bench;create=true", DerbyTenSevenDialect.class);
+    
+    final String url;
+    final Class<? extends Dialect> dialect;
+    
+    Database(String url, Class<? extends Dialect> dialect) {
+        this.url = url;
+        this.dialect = dialect;
+    }
+    
+}
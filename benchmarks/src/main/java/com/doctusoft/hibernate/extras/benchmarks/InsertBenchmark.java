@@ -0,0 +1,144 @@
+package com.doctusoft.hibernate.extras.benchmarks;
+
+import com.doctusoft.hibernate.extras.ChunkSizes;
+import com.doctusoft.hibernate.extras.HibernateMultiLineInsert;
+import com.doctusoft.hibernate.extras.MultiLineInsertRegistry;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InsertBenchmark {
+    
+    @State(Scope.Benchmark)
+    public static class Fixture {
+        
+        @Param({"H2", "HSQLDB", "DERBY"})
+        Database database;
+        
+        @Param({"NARROW", "WIDE_NUMERIC", "WIDE_TEXT"})
+        RowShape shape;
+        
+        @Param({"100", "1000", "10000"})
+        int rowCount;
+        
+        SessionFactory sessionFactory;
+        MultiLineInsertRegistry registry;
+        
+        @Setup(Level.Trial)
+        public void buildSessionFactory() {
+            sessionFactory = new Configuration()
+                .addAnnotatedClass(shape.entityClass)
+                .setProperty(AvailableSettings.URL, database.url)
+                .setProperty(AvailableSettings.DIALECT, database.dialect.getName())
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.STATEMENT_BATCH_SIZE, String.valueOf(JDBC_BATCH_SIZE))
+                .buildSessionFactory();
+            registry = MultiLineInsertRegistry.createInitialized(sessionFactory);
+        }
+        
+        @TearDown(Level.Invocation)
+        public void deleteRows() {
+            inTransaction(session -> session
+                .createQuery("delete from " + shape.entityClass.getName())
+                .executeUpdate());
+        }
+        
+        @TearDown(Level.Trial)
+        public void closeSessionFactory() {
+            sessionFactory.close();
+        }
+        
+        void inTransaction(Consumer<Session> work) {
+            try (Session session = sessionFactory.openSession()) {
+                session.beginTransaction();
+                work.accept(session);
+                session.getTransaction().commit();
+            }
+        }
+        
+    }
+    
+    @State(Scope.Benchmark)
+    public static class MultiLineChunking {
+        
+        @Param({"UNBOUNDED", "FIXED_100", "FIXED_100_JDBC_BATCH_10", "DEFAULT_BUCKETS", "POWERS_OF_TWO_1024"})
+        String chunking;
+        
+        ChunkSizes chunkSizes;
+        int jdbcBatchSize = 1;
+        
+        @Setup(Level.Trial)
+        public void resolveChunkSizes() {
+            switch (chunking) {
+                case "UNBOUNDED":
+                    chunkSizes = ChunkSizes.unbounded();
+                    break;
+                case "FIXED_100":
+                    chunkSizes = ChunkSizes.fixed(100);
+                    break;
+                case "FIXED_100_JDBC_BATCH_10":
+                    chunkSizes = ChunkSizes.fixed(100);
+                    jdbcBatchSize = 10;
+                    break;
+                case "DEFAULT_BUCKETS":
+                    chunkSizes = ChunkSizes.DEFAULT_BUCKETS;
+                    break;
+                case "POWERS_OF_TWO_1024":
+                    chunkSizes = ChunkSizes.powersOfTwo(1024);
+                    break;
+                default:
+                    throw new IllegalArgumentException(chunking);
+            }
+        }
+        
+    }
+    
+    static final int JDBC_BATCH_SIZE = 50;
+    
+    @Benchmark
+    public void singleRowSave(Fixture fixture) {
+        Object[] rows = fixture.shape.createRows(fixture.rowCount);
+        fixture.inTransaction(session -> {
+            session.setJdbcBatchSize(1);
+            saveAll(session, rows);
+        });
+    }
+    
+    @Benchmark
+    public void jdbcBatchSave(Fixture fixture) {
+        Object[] rows = fixture.shape.createRows(fixture.rowCount);
+        fixture.inTransaction(session -> saveAll(session, rows));
+    }
+    
+    @Benchmark
+    public void multiLineInsert(Fixture fixture, MultiLineChunking chunking) {
+        Object[] rows = fixture.shape.createRows(fixture.rowCount);
+        HibernateMultiLineInsert insert = fixture.registry
+            .lookup(fixture.shape.entityClass)
+            .withChunkSizes(chunking.chunkSizes)
+            .withJdbcBatchSize(chunking.jdbcBatchSize);
+        fixture.inTransaction(session -> insert.insertInBatch(session, rows));
+    }
+    
+    private static void saveAll(Session session, Object[] rows) {
+        for (int i = 0; i < rows.length; ++i) {
+            session.save(rows[i]);
+            if ((i + 1) % JDBC_BATCH_SIZE == 0) {
+                // keeps the persistence context small, like any sane bulk load would
+                session.flush();
+                session.clear();
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,33 @@
+package com.doctusoft.hibernate.extras.benchmarks;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Temporal;
+import javax.persistence.TemporalType;
+import java.math.BigDecimal;
+import java.util.Date;
+
+@Entity
+public class NarrowRow {
+    
+    @Id
+    long id;
+    
+    String label;
+    int quantity;
+    BigDecimal amount;
+    @Temporal(TemporalType.TIMESTAMP)
+    Date created;
+    
+    protected NarrowRow() {
+    }
+    
+    public NarrowRow(long id, long seed) {
+        this.id = id;
+        this.label = "row-" + seed;
+        this.quantity = (int) seed;
+        this.amount = BigDecimal.valueOf(seed, 2);
+        this.created = new Date(seed);
+    }
+    
+}
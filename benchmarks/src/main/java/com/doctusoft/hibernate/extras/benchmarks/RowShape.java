@@ -0,0 +1,27 @@
+package com.doctusoft.hibernate.extras.benchmarks;
+
+import java.util.function.LongFunction;
+
+public enum RowShape {
+    
+    NARROW(NarrowRow.class, id -> new NarrowRow(id, id)),
+    WIDE_NUMERIC(WideNumericRow.class, id -> new WideNumericRow(id, id)),
+    WIDE_TEXT(WideTextRow.class, id -> new WideTextRow(id, id));
+    
+    final Class<?> entityClass;
+    final LongFunction<Object> factory;
+    
+    RowShape(Class<?> entityClass, LongFunction<Object> factory) {
+        this.entityClass = entityClass;
+        this.factory = factory;
+    }
+    
+    public Object[] createRows(int rowCount) {
+        Object[] rows = new Object[rowCount];
+        for (int i = 0; i < rowCount; ++i) {
+            rows[i] = factory.apply(i);
+        }
+        return rows;
+    }
+    
+}
@@ -0,0 +1,100 @@
+package com.doctusoft.hibernate.extras.benchmarks;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+@Entity
+public class WideNumericRow {
+    
+    @Id
+    long id;
+    
+    long l00;
+    long l01;
+    long l02;
+    long l03;
+    long l04;
+    long l05;
+    long l06;
+    long l07;
+    long l08;
+    long l09;
+    long l10;
+    long l11;
+    long l12;
+    long l13;
+    int i00;
+    int i01;
+    int i02;
+    int i03;
+    int i04;
+    int i05;
+    int i06;
+    int i07;
+    int i08;
+    int i09;
+    int i10;
+    int i11;
+    int i12;
+    double d00;
+    double d01;
+    double d02;
+    double d03;
+    double d04;
+    double d05;
+    double d06;
+    double d07;
+    double d08;
+    double d09;
+    double d10;
+    double d11;
+    double d12;
+    
+    protected WideNumericRow() {
+    }
+    
+    public WideNumericRow(long id, long seed) {
+        this.id = id;
+        this.l00 = seed + 0;
+        this.l01 = seed + 1;
+        this.l02 = seed + 2;
+        this.l03 = seed + 3;
+        this.l04 = seed + 4;
+        this.l05 = seed + 5;
+        this.l06 = seed + 6;
+        this.l07 = seed + 7;
+        this.l08 = seed + 8;
+        this.l09 = seed + 9;
+        this.l10 = seed + 10;
+        this.l11 = seed + 11;
+        this.l12 = seed + 12;
+        this.l13 = seed + 13;
+        this.i00 = (int) seed + 0;
+        this.i01 = (int) seed + 1;
+        this.i02 = (int) seed + 2;
+        this.i03 = (int) seed + 3;
+        this.i04 = (int) seed + 4;
+        this.i05 = (int) seed + 5;
+        this.i06 = (int) seed + 6;
+        this.i07 = (int) seed + 7;
+        this.i08 = (int) seed + 8;
+        this.i09 = (int) seed + 9;
+        this.i10 = (int) seed + 10;
+        this.i11 = (int) seed + 11;
+        this.i12 = (int) seed + 12;
+        this.d00 = seed * 0.5;
+        this.d01 = seed * 1.5;
+        this.d02 = seed * 2.5;
+        this.d03 = seed * 3.5;
+        this.d04 = seed * 4.5;
+        this.d05 = seed * 5.5;
+        this.d06 = seed * 6.5;
+        this.d07 = seed * 7.5;
+        this.d08 = seed * 8.5;
+        this.d09 = seed * 9.5;
+        this.d10 = seed * 10.5;
+        this.d11 = seed * 11.5;
+        this.d12 = seed * 12.5;
+    }
+    
+}
@@ -0,0 +1,100 @@
+package com.doctusoft.hibernate.extras.benchmarks;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+@Entity
+public class WideTextRow {
+    
+    @Id
+    long id;
+    
+    String s00;
+    String s01;
+    String s02;
+    String s03;
+    String s04;
+    String s05;
+    String s06;
+    String s07;
+    String s08;
+    String s09;
+    String s10;
+    String s11;
+    String s12;
+    String s13;
+    String s14;
+    String s15;
+    String s16;
+    String s17;
+    String s18;
+    String s19;
+    String s20;
+    String s21;
+    String s22;
+    String s23;
+    String s24;
+    String s25;
+    String s26;
+    String s27;
+    String s28;
+    String s29;
+    String s30;
+    String s31;
+    String s32;
+    String s33;
+    String s34;
+    String s35;
+    String s36;
+    String s37;
+    String s38;
+    String s39;
+    
+    protected WideTextRow() {
+    }
+    
+    public WideTextRow(long id, long seed) {
+        this.id = id;
+        this.s00 = "value-0-" + seed;
+        this.s01 = "value-1-" + seed;
+        this.s02 = "value-2-" + seed;
+        this.s03 = "value-3-" + seed;
+        this.s04 = "value-4-" + seed;
+        this.s05 = "value-5-" + seed;
+        this.s06 = "value-6-" + seed;
+        this.s07 = "value-7-" + seed;
+        this.s08 = "value-8-" + seed;
+        this.s09 = "value-9-" + seed;
+        this.s10 = "value-10-" + seed;
+        this.s11 = "value-11-" + seed;
+        this.s12 = "value-12-" + seed;
+        this.s13 = "value-13-" + seed;
+        this.s14 = "value-14-" + seed;
+        this.s15 = "value-15-" + seed;
+        this.s16 = "value-16-" + seed;
+        this.s17 = "value-17-" + seed;
+        this.s18 = "value-18-" + seed;
+        this.s19 = "value-19-" + seed;
+        this.s20 = "value-20-" + seed;
+        this.s21 = "value-21-" + seed;
+        this.s22 = "value-22-" + seed;
+        this.s23 = "value-23-" + seed;
+        this.s24 = "value-24-" + seed;
+        this.s25 = "value-25-" + seed;
+        this.s26 = "value-26-" + seed;
+        this.s27 = "value-27-" + seed;
+        this.s28 = "value-28-" + seed;
+        this.s29 = "value-29-" + seed;
+        this.s30 = "value-30-" + seed;
+        this.s31 = "value-31-" + seed;
+        this.s32 = "value-32-" + seed;
+        this.s33 = "value-33-" + seed;
+        this.s34 = "value-34-" + seed;
+        this.s35 = "value-35-" + seed;
+        this.s36 = "value-36-" + seed;
+        this.s37 = "value-37-" + seed;
+        this.s38 = "value-38-" + seed;
+        this.s39 = "value-39-" + seed;
+    }
+    
+}
@@ -0,0 +1,52 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.dialect.SQLServerDialect;
+
+import static java.util.Objects.*;
+
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BindParameterLimits {
+    
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    
+    public static final int SQL_SERVER = 2100;
+    public static final int POSTGRESQL = 32767;
+    public static final int MYSQL = 65535;
+    
+    public static int forDialect(Dialect dialect) {
+        requireNonNull(dialect, "dialect");
+        if (dialect instanceof SQLServerDialect) {
+            return SQL_SERVER;
+        }
+        if (dialect instanceof PostgreSQL81Dialect) {
+            // the wire protocol sends the parameter count as a 16-bit signed integer
+            return POSTGRESQL;
+        }
+        if (dialect instanceof MySQLDialect) {
+            return MYSQL;
+        }
+        // no known hard limit, the statement size is only bound by the memory of the driver and the database
+        return UNLIMITED;
+    }
+    
+    // the number of elements an in list of the dialect may have, e.G. Oracle rejects more than 1000
+    public static int maxInListElements(Dialect dialect) {
+        requireNonNull(dialect, "dialect");
+        int limit = dialect.getInExpressionCountLimit();
+        return limit > 0 ? limit : Integer.MAX_VALUE;
+    }
+    
+    public static int maxRowsPerStatement(int maxBindParameters, int parameterCountPerRow) {
+        if (maxBindParameters == UNLIMITED || parameterCountPerRow == 0) {
+            return Integer.MAX_VALUE;
+        }
+        // a single row must always be allowed, the database will tell if it's too big
+        return Math.max(1, maxBindParameters / parameterCountPerRow);
+    }
+    
+}
@@ -0,0 +1,76 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.*;
+
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ChunkSizes {
+    
+    public static ChunkSizes unbounded() {
+        return UNBOUNDED;
+    }
+    
+    public static ChunkSizes fixed(int maxChunkSize) {
+        checkArgument(maxChunkSize > 0, "maxChunkSize must be positive: %s", maxChunkSize);
+        return new ChunkSizes(maxChunkSize, NO_BUCKETS);
+    }
+    
+    public static ChunkSizes buckets(int... bucketSizes) {
+        checkArgument(bucketSizes.length > 0, "at least one bucket size is required");
+        // the bucket of 1 is always added, otherwise some row counts could not be split
+        int[] sortedDistinct = IntStream.concat(Arrays.stream(bucketSizes), IntStream.of(1))
+            .peek(size -> checkArgument(size > 0, "bucket sizes must be positive: %s", size))
+            .distinct()
+            .map(size -> -size)
+            .sorted()
+            .map(size -> -size)
+            .toArray();
+        return new ChunkSizes(sortedDistinct[0], sortedDistinct);
+    }
+    
+    public static ChunkSizes powersOfTwo(int maxChunkSize) {
+        checkArgument(maxChunkSize > 0, "maxChunkSize must be positive: %s", maxChunkSize);
+        int[] bucketSizes = new int[Integer.numberOfTrailingZeros(Integer.highestOneBit(maxChunkSize)) + 1];
+        for (int i = 0; i < bucketSizes.length; ++i) {
+            bucketSizes[i] = Integer.highestOneBit(maxChunkSize) >>> i;
+        }
+        return new ChunkSizes(bucketSizes[0], bucketSizes);
+    }
+    
+    public static final ChunkSizes DEFAULT_BUCKETS = buckets(512, 128, 32, 8, 1);
+    
+    int maxChunkSize;
+    
+    // in descending order always ending with 1, or empty if any chunk size up to the maximum is allowed
+    @Getter(AccessLevel.NONE)
+    int[] bucketSizes;
+    
+    public boolean isBucketed() {
+        return bucketSizes.length > 0;
+    }
+    
+    public int nextChunkSize(int remaining) {
+        checkArgument(remaining > 0, "remaining must be positive: %s", remaining);
+        if (bucketSizes.length == 0) {
+            return Math.min(remaining, maxChunkSize);
+        }
+        int i = 0;
+        while (bucketSizes[i] > remaining) {
+            ++i;
+        }
+        return bucketSizes[i];
+    }
+    
+    private static final int[] NO_BUCKETS = new int[0];
+    
+    private static final ChunkSizes UNBOUNDED = new ChunkSizes(Integer.MAX_VALUE, NO_BUCKETS);
+    
+}
@@ -0,0 +1,429 @@
+package com.doctusoft.hibernate.extras;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentityGenerator;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.pretty.MessageHelper;
+import org.hibernate.type.DoubleType;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.LongType;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.sql.JDBCType;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import static com.google.common.base.Preconditions.*;
+import static java.util.Objects.*;
+
+// a staging buffer of rows for HibernateMultiLineInsert.insertColumnar, the long, int and double properties are kept
+// in primitive arrays with a null bitmap, and bound with the specialized setters of the PreparedStatement
+public class ColumnarRows {
+    
+    public static ColumnarRows create(HibernateMultiLineInsert multiLineInsert, int capacity) {
+        requireNonNull(multiLineInsert, "multiLineInsert");
+        checkArgument(capacity > 0, "capacity must be positive: %s", capacity);
+        AbstractEntityPersister persister = multiLineInsert.getPersister();
+        int[][] placeholderProperties = multiLineInsert.getInsertShape().getPlaceholderProperties();
+        if (multiLineInsert.getPersisterSpy().getTableSpan() != 1
+            || multiLineInsert.getDynamicInsertShapes() != null
+            || multiLineInsert.getIdentifierGenerator() instanceof IdentityGenerator
+            || persister.isVersioned()
+            || persister.getEntityMetamodel().hasPreInsertGeneratedValues()
+            || placeholderProperties == null) {
+            // every placeholder of the one insert string must be a plain value known before insertion
+            throw new HibernateException("Columnar rows are only supported for single table entities with ids "
+                + "generated before insertion and without versions or generated values: "
+                + MessageHelper.infoString(persister));
+        }
+        Type[] propertyTypes = persister.getPropertyTypes();
+        int[] placeholderCounts = new int[propertyTypes.length + 1];
+        for (int property : placeholderProperties[0]) {
+            // the id is counted at the end
+            ++placeholderCounts[property < 0 ? propertyTypes.length : property];
+        }
+        Column[] columns = new Column[propertyTypes.length];
+        for (int k = 0; k <= propertyTypes.length; ++k) {
+            if (placeholderCounts[k] > 1) {
+                throw new HibernateException("Columnar rows are only supported for single column properties: "
+                    + MessageHelper.infoString(persister)
+                    + (k < propertyTypes.length ? "." + persister.getPropertyNames()[k] : ""));
+            }
+            if (k < propertyTypes.length && placeholderCounts[k] == 1) {
+                columns[k] = Column.create(propertyTypes[k], capacity);
+            }
+        }
+        return new ColumnarRows(
+            multiLineInsert,
+            placeholderProperties[0],
+            Column.create(persister.getIdentifierType(), capacity),
+            columns,
+            capacity);
+    }
+    
+    private final HibernateMultiLineInsert multiLineInsert;
+    // the property index of each placeholder of a row, -1 for the id
+    private final int[] placeholderProperties;
+    private final Column idColumn;
+    // by property index, null for the non-insertable properties
+    private final Column[] columns;
+    private final int capacity;
+    private int size;
+    
+    private ColumnarRows(
+        HibernateMultiLineInsert multiLineInsert,
+        int[] placeholderProperties,
+        Column idColumn,
+        Column[] columns,
+        int capacity) {
+        this.multiLineInsert = multiLineInsert;
+        this.placeholderProperties = placeholderProperties;
+        this.idColumn = idColumn;
+        this.columns = columns;
+        this.capacity = capacity;
+    }
+    
+    HibernateMultiLineInsert getMultiLineInsert() {
+        return multiLineInsert;
+    }
+    
+    public int getPropertyIndex(String propertyName) {
+        return multiLineInsert.getPersister().getEntityMetamodel().getPropertyIndex(propertyName);
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int capacity() {
+        return capacity;
+    }
+    
+    public boolean isFull() {
+        return size == capacity;
+    }
+    
+    // appends a row of null values, returns its row index
+    public int addRow() {
+        if (size == capacity) {
+            throw new IllegalStateException("The rows are full: " + capacity);
+        }
+        idColumn.setNull(size);
+        for (Column column : columns) {
+            if (column != null) {
+                column.setNull(size);
+            }
+        }
+        return size++;
+    }
+    
+    public void clear() {
+        // the object values are released for the garbage collector
+        idColumn.clear(size);
+        for (Column column : columns) {
+            if (column != null) {
+                column.clear(size);
+            }
+        }
+        size = 0;
+    }
+    
+    // a null id is generated on insertion
+    public void setId(int row, Serializable id) {
+        idColumn.setObject(checkRow(row), id);
+    }
+    
+    public void setId(int row, long id) {
+        idColumn.setLong(checkRow(row), id);
+    }
+    
+    public void setLong(int row, int property, long value) {
+        column(property).setLong(checkRow(row), value);
+    }
+    
+    public void setInt(int row, int property, int value) {
+        column(property).setInt(checkRow(row), value);
+    }
+    
+    public void setDouble(int row, int property, double value) {
+        column(property).setDouble(checkRow(row), value);
+    }
+    
+    public void setObject(int row, int property, Object value) {
+        column(property).setObject(checkRow(row), value);
+    }
+    
+    public void setNull(int row, int property) {
+        column(property).setNull(checkRow(row));
+    }
+    
+    boolean isIdNull(int row) {
+        return idColumn.isNull(row);
+    }
+    
+    // returns the next parameter index
+    int bindRow(PreparedStatement ps, int row, int index, SharedSessionContractImplementor sessionImpl)
+        throws SQLException {
+        for (int property : placeholderProperties) {
+            Column column = property < 0 ? idColumn : columns[property];
+            column.bind(ps, row, index++, sessionImpl);
+        }
+        return index;
+    }
+    
+    private int checkRow(int row) {
+        checkElementIndex(row, size, "row");
+        return row;
+    }
+    
+    private Column column(int property) {
+        Column column = property >= 0 && property < columns.length ? columns[property] : null;
+        if (column == null) {
+            throw new IllegalArgumentException("Not an insertable property: " + property);
+        }
+        return column;
+    }
+    
+    abstract static class Column {
+        
+        static Column create(Type type, int capacity) {
+            if (type instanceof LongType) {
+                return new LongColumn(capacity);
+            }
+            if (type instanceof IntegerType) {
+                return new IntColumn(capacity);
+            }
+            if (type instanceof DoubleType) {
+                return new DoubleColumn(capacity);
+            }
+            return new ObjectColumn(type, capacity);
+        }
+        
+        abstract boolean isNull(int row);
+        
+        abstract void setNull(int row);
+        
+        abstract void clear(int size);
+        
+        void setLong(int row, long value) {
+            setObject(row, value);
+        }
+        
+        void setInt(int row, int value) {
+            setObject(row, value);
+        }
+        
+        void setDouble(int row, double value) {
+            setObject(row, value);
+        }
+        
+        abstract void setObject(int row, Object value);
+        
+        abstract void bind(PreparedStatement ps, int row, int index, SharedSessionContractImplementor sessionImpl)
+            throws SQLException;
+        
+    }
+    
+    abstract static class PrimitiveColumn extends Column {
+        
+        // a set bit for each null value
+        final BitSet nulls;
+        final int sqlType;
+        
+        PrimitiveColumn(int capacity, int sqlType) {
+            this.nulls = new BitSet(capacity);
+            this.sqlType = sqlType;
+        }
+        
+        @Override
+        boolean isNull(int row) {
+            return nulls.get(row);
+        }
+        
+        @Override
+        void setNull(int row) {
+            nulls.set(row);
+        }
+        
+        @Override
+        void clear(int size) {
+            nulls.clear();
+        }
+        
+        @Override
+        void setObject(int row, Object value) {
+            if (value == null) {
+                setNull(row);
+            } else if (value instanceof Number) {
+                setNumber(row, (Number) value);
+            } else {
+                throw invalidValue(value);
+            }
+        }
+        
+        abstract void setNumber(int row, Number value);
+        
+        IllegalArgumentException invalidValue(Object value) {
+            return new IllegalArgumentException("Not a valid " + JDBCType.valueOf(sqlType).getName() + " value: "
+                + value + " of " + value.getClass().getName());
+        }
+        
+        @Override
+        void bind(PreparedStatement ps, int row, int index, SharedSessionContractImplementor sessionImpl)
+            throws SQLException {
+            if (nulls.get(row)) {
+                ps.setNull(index, sqlType);
+            } else {
+                bindValue(ps, row, index);
+            }
+        }
+        
+        abstract void bindValue(PreparedStatement ps, int row, int index) throws SQLException;
+        
+        // the types converted by longValue without rounding
+        static boolean isIntegral(Number value) {
+            return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+        }
+        
+    }
+    
+    static class LongColumn extends PrimitiveColumn {
+        
+        final long[] values;
+        
+        LongColumn(int capacity) {
+            super(capacity, Types.BIGINT);
+            this.values = new long[capacity];
+        }
+        
+        @Override
+        void setLong(int row, long value) {
+            values[row] = value;
+            nulls.clear(row);
+        }
+        
+        @Override
+        void setNumber(int row, Number value) {
+            if (!isIntegral(value)) {
+                throw invalidValue(value);
+            }
+            setLong(row, value.longValue());
+        }
+        
+        @Override
+        void bindValue(PreparedStatement ps, int row, int index) throws SQLException {
+            ps.setLong(index, values[row]);
+        }
+        
+    }
+    
+    static class IntColumn extends PrimitiveColumn {
+        
+        final int[] values;
+        
+        IntColumn(int capacity) {
+            super(capacity, Types.INTEGER);
+            this.values = new int[capacity];
+        }
+        
+        @Override
+        void setInt(int row, int value) {
+            values[row] = value;
+            nulls.clear(row);
+        }
+        
+        @Override
+        void setLong(int row, long value) {
+            if ((int) value != value) {
+                throw invalidValue(value);
+            }
+            setInt(row, (int) value);
+        }
+        
+        @Override
+        void setNumber(int row, Number value) {
+            if (!isIntegral(value)) {
+                throw invalidValue(value);
+            }
+            setLong(row, value.longValue());
+        }
+        
+        @Override
+        void bindValue(PreparedStatement ps, int row, int index) throws SQLException {
+            ps.setInt(index, values[row]);
+        }
+        
+    }
+    
+    static class DoubleColumn extends PrimitiveColumn {
+        
+        final double[] values;
+        
+        DoubleColumn(int capacity) {
+            super(capacity, Types.DOUBLE);
+            this.values = new double[capacity];
+        }
+        
+        @Override
+        void setDouble(int row, double value) {
+            values[row] = value;
+            nulls.clear(row);
+        }
+        
+        @Override
+        void setNumber(int row, Number value) {
+            setDouble(row, value.doubleValue());
+        }
+        
+        @Override
+        void bindValue(PreparedStatement ps, int row, int index) throws SQLException {
+            ps.setDouble(index, values[row]);
+        }
+        
+    }
+    
+    // the values of any other type, bound by the Hibernate type like dehydrate would
+    static class ObjectColumn extends Column {
+        
+        final Type type;
+        final Object[] values;
+        
+        ObjectColumn(Type type, int capacity) {
+            this.type = type;
+            this.values = new Object[capacity];
+        }
+        
+        @Override
+        boolean isNull(int row) {
+            return values[row] == null;
+        }
+        
+        @Override
+        void setNull(int row) {
+            values[row] = null;
+        }
+        
+        @Override
+        void clear(int size) {
+            Arrays.fill(values, 0, size, null);
+        }
+        
+        @Override
+        void setObject(int row, Object value) {
+            values[row] = value;
+        }
+        
+        @Override
+        void bind(PreparedStatement ps, int row, int index, SharedSessionContractImplementor sessionImpl)
+            throws SQLException {
+            type.nullSafeSet(ps, values[row], index, sessionImpl);
+        }
+        
+    }
+    
+}
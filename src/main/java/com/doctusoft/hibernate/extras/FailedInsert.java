@@ -0,0 +1,22 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.hibernate.JDBCException;
+
+// an entity left out of HibernateMultiLineInsert.insertIsolatingFailures, as its row alone failed to insert
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class FailedInsert {
+    
+    public static FailedInsert of(int index, Object entity, JDBCException exception) {
+        return new FailedInsert(index, entity, exception);
+    }
+    
+    // in the entities passed to the insert
+    int index;
+    Object entity;
+    JDBCException exception;
+    
+}
@@ -0,0 +1,256 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Wither;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.internal.AbstractSharedSessionContract;
+import org.hibernate.internal.util.collections.ArrayHelper;
+import org.hibernate.persister.collection.AbstractCollectionPersister;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.pretty.MessageHelper;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static com.doctusoft.hibernate.extras.Reflection.*;
+import static java.util.Objects.*;
+
+// inserts the rows of new element collections and many-to-many join tables of many owners in multi-line chunks,
+// the way AbstractCollectionPersister.recreate would write them one by one
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class HibernateMultiLineCollectionInsert {
+    
+    public static HibernateMultiLineCollectionInsert lookup(CollectionPersister persister) {
+        requireNonNull(persister, "persister");
+        if (!(persister instanceof AbstractCollectionPersister)) {
+            // custom persisters may write the rows any way
+            return null;
+        }
+        if (persister.isInverse() || persister.isOneToMany()) {
+            // the rows are written by the other side, or by the entity updates of a one-to-many
+            return null;
+        }
+        if (persister.hasCache()) {
+            // the cache entries would need the per-collection processing of CollectionRecreateAction
+            return null;
+        }
+        AbstractCollectionPersister collectionPersister = (AbstractCollectionPersister) persister;
+        if (readField(collectionPersister, HAS_IDENTIFIER, Boolean.class)
+            || readField(collectionPersister, INSERT_CALLABLE, Boolean.class)) {
+            // the row ids of an idbag are generated one by one, and stored procedure calls have no multi-line syntax
+            return null;
+        }
+        if (!persister.getCollectionType().useLHSPrimaryKey()) {
+            // the key of a property-ref collection is not the id of the owner
+            return null;
+        }
+        EntityPersister ownerPersister = persister.getOwnerEntityPersister();
+        String propertyName = persister.getRole().substring(ownerPersister.getEntityName().length() + 1);
+        if (propertyName.indexOf('.') >= 0) {
+            // collections of embedded components are not supported
+            return null;
+        }
+        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse(
+            invokeMethod(collectionPersister, GET_SQL_INSERT_ROW_STRING, String.class));
+        if (sqlInsert == null) {
+            // some unknown insert syntax, e.G. a provided customSqlInsert
+            return null;
+        }
+        int parameterCountPerRow = collectionPersister.getKeyColumnNames().length
+            + ArrayHelper.countTrue(readField(collectionPersister, ELEMENT_COLUMN_IS_SETTABLE, boolean[].class));
+        if (persister.hasIndex()) {
+            parameterCountPerRow +=
+                ArrayHelper.countTrue(readField(collectionPersister, INDEX_COLUMN_IS_SETTABLE, boolean[].class));
+        }
+        return new HibernateMultiLineCollectionInsert(
+            collectionPersister,
+            ownerPersister.getEntityMetamodel().getPropertyIndex(propertyName),
+            sqlInsert,
+            parameterCountPerRow,
+            ChunkSizes.unbounded(),
+            BindParameterLimits.forDialect(persister.getFactory().getJdbcServices().getDialect()));
+    }
+    
+    AbstractCollectionPersister persister;
+    // of the collection in the owner entity
+    int propertyIndex;
+    MultiLineSqlInsert sqlInsert;
+    int parameterCountPerRow;
+    
+    @Wither
+    @NonNull
+    ChunkSizes chunkSizes;
+    
+    @Wither
+    int maxBindParameters;
+    
+    // writes the collections of owners already inserted, e.G. by HibernateMultiLineInsert, the collections of the
+    // managed owners are registered as loaded ones, so that the next flush does not insert them again
+    public void insertInBatch(Session session, Object[] owners) {
+        
+        AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
+        PersistenceContext persistenceContext = sessionImpl.getPersistenceContext();
+        EntityPersister ownerPersister = persister.getOwnerEntityPersister();
+        List<Object> writtenOwners = new ArrayList<>(owners.length);
+        List<Serializable> keys = new ArrayList<>(owners.length);
+        List<PersistentCollection> collections = new ArrayList<>(owners.length);
+        List<CollectionRow> rows = new ArrayList<>();
+        for (Object owner : owners) {
+            Object value = ownerPersister.getPropertyValue(owner, propertyIndex);
+            if (value == null) {
+                continue;
+            }
+            if (value instanceof PersistentCollection
+                && persistenceContext.getCollectionEntry((PersistentCollection) value) != null) {
+                throw new HibernateException("The collection is already written by Hibernate: "
+                    + MessageHelper.collectionInfoString(persister.getRole(), null));
+            }
+            Serializable key = ownerPersister.getIdentifier(owner, sessionImpl);
+            PersistentCollection collection = value instanceof PersistentCollection
+                ? (PersistentCollection) value
+                : persister.getCollectionType().wrap(sessionImpl, value);
+            writtenOwners.add(owner);
+            keys.add(key);
+            collections.add(collection);
+            Iterator<?> entries = collection.entries(persister);
+            for (int i = 0; entries.hasNext(); ++i) {
+                Object entry = entries.next();
+                if (collection.entryExists(entry, i)) {
+                    rows.add(new CollectionRow(key, collection, entry, i));
+                }
+            }
+        }
+        
+        int maxRowsPerStatement = BindParameterLimits.maxRowsPerStatement(maxBindParameters, parameterCountPerRow);
+        for (int offset = 0; offset < rows.size(); ) {
+            int countRows = chunkSizes.nextChunkSize(Math.min(rows.size() - offset, maxRowsPerStatement));
+            insertRows(sessionImpl, rows, offset, countRows);
+            offset += countRows;
+        }
+        
+        for (int i = 0; i < writtenOwners.size(); ++i) {
+            Object owner = writtenOwners.get(i);
+            PersistentCollection collection = collections.get(i);
+            EntityEntry ownerEntry = persistenceContext.getEntry(owner);
+            if (ownerEntry != null) {
+                // like a loaded collection: its snapshot is the written state
+                persistenceContext.addInitializedCollection(persister, collection, keys.get(i));
+                collection.setOwner(owner);
+                ownerPersister.setPropertyValue(owner, propertyIndex, collection);
+                Object[] loadedState = ownerEntry.getLoadedState();
+                if (loadedState != null) {
+                    loadedState[propertyIndex] = collection;
+                }
+            }
+        }
+    }
+    
+    private void insertRows(
+        AbstractSharedSessionContract sessionImpl,
+        List<CollectionRow> rows,
+        int offset,
+        int countRows) {
+        
+        String sql = sqlInsert.getMultiLineInsertString(countRows);
+        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        try {
+            boolean callable = false;
+            PreparedStatement insert = jdbcCoordinator
+                .getStatementPreparer()
+                .prepareStatement(sql, callable);
+            try {
+                int idx = 1;
+                for (int i = offset; i < offset + countRows; ++i) {
+                    idx = rows.get(i).write(persister, insert, idx, sessionImpl);
+                }
+                int rowCount = jdbcCoordinator
+                    .getResultSetReturn()
+                    .executeUpdate(insert);
+                HibernateMultiLineInsert.checkRowCount(countRows, rowCount);
+            } finally {
+                jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(insert);
+                jdbcCoordinator.afterStatementExecution();
+            }
+        } catch (SQLException e) {
+            throw sessionImpl.getFactory()
+                .getServiceRegistry()
+                .getService(JdbcServices.class)
+                .getSqlExceptionHelper()
+                .convert(e, "could not insert collection rows: " + persister.getRole(), sql);
+        }
+    }
+    
+    @Value
+    static class CollectionRow {
+        
+        Serializable key;
+        PersistentCollection collection;
+        Object entry;
+        int position;
+        
+        // same as the row writing of AbstractCollectionPersister.recreate, returns the next index
+        int write(
+            AbstractCollectionPersister persister,
+            PreparedStatement ps,
+            int index,
+            SharedSessionContractImplementor sessionImpl) throws SQLException {
+            try {
+                index = (int) WRITE_KEY.invokeExact(persister, ps, key, index, sessionImpl);
+                if (persister.hasIndex()) {
+                    Object collectionIndex = collection.getIndex(entry, position, persister);
+                    index = (int) WRITE_INDEX.invokeExact(persister, ps, collectionIndex, index, sessionImpl);
+                }
+                Object element = collection.getElement(entry);
+                return (int) WRITE_ELEMENT.invokeExact(persister, ps, element, index, sessionImpl);
+            } catch (SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
+            }
+        }
+        
+    }
+    
+    static Class<?> CLASS = AbstractCollectionPersister.class;
+    
+    static final MethodHandle WRITE_KEY = lookupWriteMethod("writeKey", Serializable.class);
+    static final MethodHandle WRITE_INDEX = lookupWriteMethod("writeIndex", Object.class);
+    static final MethodHandle WRITE_ELEMENT = lookupWriteMethod("writeElement", Object.class);
+    
+    private static MethodHandle lookupWriteMethod(String name, Class<?> valueType) {
+        return lookupMethodHandle(CLASS, name,
+            PreparedStatement.class,
+            valueType,
+            int.class, // index
+            SharedSessionContractImplementor.class
+        );
+    }
+    
+    static Field HAS_IDENTIFIER = lookupField(CLASS, "hasIdentifier");
+    static Field INSERT_CALLABLE = lookupField(CLASS, "insertCallable");
+    static Field INDEX_COLUMN_IS_SETTABLE = lookupField(CLASS, "indexColumnIsSettable");
+    static Field ELEMENT_COLUMN_IS_SETTABLE = lookupField(CLASS, "elementColumnIsSettable");
+    
+    static Method GET_SQL_INSERT_ROW_STRING = lookupMethod(CLASS, "getSQLInsertRowString");
+    
+}
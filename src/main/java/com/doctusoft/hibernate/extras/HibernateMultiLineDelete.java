@@ -0,0 +1,274 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.HibernateMultiLineInsert.EntityPersisterSpy;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.Value;
+import lombok.experimental.Wither;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.TransientObjectException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.OptimisticLockStyle;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.EntityKey;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.PersistenceContext.NaturalIdHelper;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.internal.AbstractSharedSessionContract;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.pretty.MessageHelper;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static java.util.Objects.*;
+
+// deletes many entities with one statement per table and chunk: delete from t where id in (?, ?), or
+// where (id, version) in ((?, ?), (?, ?)) for versioned entities
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@EqualsAndHashCode(exclude = "sqlDeletes")
+@ToString(exclude = "sqlDeletes")
+public class HibernateMultiLineDelete {
+    
+    public static HibernateMultiLineDelete lookup(EntityPersister persister) {
+        requireNonNull(persister, "persister");
+        if (!(persister instanceof AbstractEntityPersister)) {
+            // custom persisters may delete the entities any way
+            return null;
+        }
+        if (persister.hasCache() || persister.getEntityMetamodel().hasCollections()) {
+            // the cache entries and the collection rows would need the per-entity processing of EntityDeleteAction
+            return null;
+        }
+        OptimisticLockStyle optimisticLockStyle = persister.getEntityMetamodel().getOptimisticLockStyle();
+        if (optimisticLockStyle != OptimisticLockStyle.VERSION && optimisticLockStyle != OptimisticLockStyle.NONE) {
+            // the dirty and all styles compare the loaded state of the properties
+            return null;
+        }
+        EntityPersisterSpy persisterSpy = EntityPersisterSpy.spyOn(persister);
+        int tableSpan = persisterSpy.getTableSpan();
+        String[] tableNames = new String[tableSpan];
+        String[][] keyColumnNames = new String[tableSpan][];
+        for (int j = 0; j < tableSpan; ++j) {
+            if (persisterSpy.getInverseTable()[j]) {
+                // never written by this entity
+                continue;
+            }
+            if (persisterSpy.getDeleteCallable()[j] || persisterSpy.getCustomSqlDeleteStrings()[j] != null) {
+                // the statements would not delete the rows the way Hibernate would
+                return null;
+            }
+            tableNames[j] = persisterSpy.getTableName(j);
+            keyColumnNames[j] = persisterSpy.getKeyColumnNames(j);
+        }
+        boolean versioned = persister.isVersioned() && optimisticLockStyle == OptimisticLockStyle.VERSION;
+        Dialect dialect = persister.getFactory().getJdbcServices().getDialect();
+        boolean rowValueInList = dialect.supportsRowValueConstructorSyntaxInInList();
+        // the tables without the version column are listed with id in (?, ?) for single column keys
+        boolean inList = rowValueInList || keyColumnNames[0].length == 1;
+        return new HibernateMultiLineDelete(
+            (AbstractEntityPersister) persister,
+            persisterSpy,
+            tableNames,
+            keyColumnNames,
+            versioned ? ((AbstractEntityPersister) persister).getVersionColumnName() : null,
+            rowValueInList,
+            inList ? BindParameterLimits.maxInListElements(dialect) : Integer.MAX_VALUE,
+            ChunkSizes.unbounded(),
+            BindParameterLimits.forDialect(dialect));
+    }
+    
+    AbstractEntityPersister persister;
+    EntityPersisterSpy persisterSpy;
+    // by table number, null for inverse tables
+    String[] tableNames;
+    String[][] keyColumnNames;
+    // null if the rows are not checked for concurrent modifications, only the root table has the version
+    String versionColumnName;
+    // otherwise the tuples are compared one by one: where (id = ? and version = ?) or (...)
+    boolean rowValueInList;
+    // the rows of a statement with an in list, e.G. Oracle rejects more than 1000
+    int maxInListRows;
+    
+    @Wither
+    @NonNull
+    ChunkSizes chunkSizes;
+    
+    @Wither
+    int maxBindParameters;
+    
+    // the statements by table number, keyed by the number of rows
+    @Getter(AccessLevel.NONE)
+    LoadingCache<Integer, String[]> sqlDeletes = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_SQL_DELETES)
+        .build(CacheLoader.from(this::createSqlDeletes));
+    
+    // deletes the rows of managed or detached entities, the managed ones are removed from the persistence context
+    // together with their natural id cross references
+    public void deleteInBatch(Session session, Object[] entities) {
+        
+        int countEntities = entities.length;
+        if (countEntities == 0) return;
+        
+        AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
+        PersistenceContext persistenceContext = sessionImpl.getPersistenceContext();
+        EntityEntry[] entries = new EntityEntry[countEntities];
+        Serializable[] ids = new Serializable[countEntities];
+        Object[] versions = new Object[countEntities];
+        for (int i = 0; i < countEntities; ++i) {
+            Object entity = entities[i];
+            entries[i] = persistenceContext.getEntry(entity);
+            if (entries[i] != null && entries[i].getStatus() != Status.MANAGED) {
+                throw new HibernateException("Only managed or detached entities can be deleted: "
+                    + MessageHelper.infoString(persister, entries[i].getId(), persister.getFactory()));
+            }
+            ids[i] = entries[i] != null ? entries[i].getId() : persister.getIdentifier(entity, sessionImpl);
+            if (ids[i] == null) {
+                throw new TransientObjectException("The entity to delete has no id: " + persister.getEntityName());
+            }
+            if (versionColumnName != null) {
+                // the version of a detached entity is the one it was loaded with
+                versions[i] = entries[i] != null ? entries[i].getVersion() : persister.getVersion(entity);
+            }
+        }
+        
+        int maxRowsPerStatement = Math.min(
+            BindParameterLimits.maxRowsPerStatement(maxBindParameters, countParametersPerRow()),
+            maxInListRows);
+        for (int offset = 0; offset < countEntities; ) {
+            int countRows = chunkSizes.nextChunkSize(Math.min(countEntities - offset, maxRowsPerStatement));
+            String[] sqlDeletes = this.sqlDeletes.getUnchecked(countRows);
+            // like Hibernate, the secondary and subclass tables first, the root table last
+            for (int j = tableNames.length - 1; j >= 0; --j) {
+                if (sqlDeletes[j] != null) {
+                    deleteRows(sessionImpl, sqlDeletes[j], j, ids, versions, offset, countRows);
+                }
+            }
+            offset += countRows;
+        }
+        
+        for (int i = 0; i < countEntities; ++i) {
+            if (entries[i] != null) {
+                // same as EntityDeleteAction.execute
+                EntityKey key = entries[i].getEntityKey();
+                persistenceContext.removeEntry(entities[i]).postDelete();
+                persistenceContext.removeEntity(key);
+                persistenceContext.removeProxy(key);
+                if (persister.hasNaturalIdentifier()) {
+                    NaturalIdHelper naturalIdHelper = persistenceContext.getNaturalIdHelper();
+                    Object[] naturalIdValues = naturalIdHelper
+                        .removeLocalNaturalIdCrossReference(persister, ids[i], entries[i].getLoadedState());
+                    if (naturalIdValues != null) {
+                        naturalIdHelper.removeSharedNaturalIdCrossReference(persister, ids[i], naturalIdValues);
+                    }
+                }
+            }
+        }
+    }
+    
+    private void deleteRows(
+        AbstractSharedSessionContract sessionImpl,
+        String sql,
+        int table,
+        Serializable[] ids,
+        Object[] versions,
+        int offset,
+        int countRows) {
+        
+        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        Type identifierType = persister.getIdentifierType();
+        int keyColumnSpan = keyColumnNames[table].length;
+        boolean checkVersion = versionColumnName != null && table == 0;
+        try {
+            boolean callable = false;
+            PreparedStatement delete = jdbcCoordinator
+                .getStatementPreparer()
+                .prepareStatement(sql, callable);
+            try {
+                int idx = 1;
+                for (int i = offset; i < offset + countRows; ++i) {
+                    identifierType.nullSafeSet(delete, ids[i], idx, sessionImpl);
+                    idx += keyColumnSpan;
+                    if (checkVersion) {
+                        persister.getVersionType().nullSafeSet(delete, versions[i], idx++, sessionImpl);
+                    }
+                }
+                int rowCount = jdbcCoordinator
+                    .getResultSetReturn()
+                    .executeUpdate(delete);
+                if (!persisterSpy.getNullableTable()[table]) {
+                    // an optional secondary table has no rows for the entities with all of its properties null
+                    HibernateMultiLineInsert.checkRowCount(countRows, rowCount);
+                }
+            } finally {
+                jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(delete);
+                jdbcCoordinator.afterStatementExecution();
+            }
+        } catch (SQLException e) {
+            throw sessionImpl.getFactory()
+                .getServiceRegistry()
+                .getService(JdbcServices.class)
+                .getSqlExceptionHelper()
+                .convert(e, "could not delete: " + MessageHelper.infoString(persister), sql);
+        }
+    }
+    
+    private int countParametersPerRow() {
+        return keyColumnNames[0].length + (versionColumnName != null ? 1 : 0);
+    }
+    
+    private String[] createSqlDeletes(int countRows) {
+        String[] sqlDeletes = new String[tableNames.length];
+        for (int j = 0; j < tableNames.length; ++j) {
+            if (tableNames[j] != null) {
+                sqlDeletes[j] = createSqlDelete(j, countRows);
+            }
+        }
+        return sqlDeletes;
+    }
+    
+    private String createSqlDelete(int table, int countRows) {
+        String[] columnNames = keyColumnNames[table];
+        if (versionColumnName != null && table == 0) {
+            columnNames = Arrays.copyOf(columnNames, columnNames.length + 1);
+            columnNames[columnNames.length - 1] = versionColumnName;
+        }
+        StringBuilder builder = new StringBuilder("delete from ").append(tableNames[table]).append(" where ");
+        if (columnNames.length == 1 || rowValueInList) {
+            String tuple = columnNames.length == 1
+                ? "?"
+                : "(" + String.join(", ", Collections.nCopies(columnNames.length, "?")) + ")";
+            builder.append(columnNames.length == 1 ? columnNames[0] : "(" + String.join(", ", columnNames) + ")");
+            builder.append(" in (");
+            for (int i = 0; i < countRows; ++i) {
+                builder.append(i > 0 ? ", " : "").append(tuple);
+            }
+            builder.append(')');
+        } else {
+            String rowCondition = String.join(" = ? and ", columnNames) + " = ?";
+            for (int i = 0; i < countRows; ++i) {
+                builder.append(i > 0 ? " or (" : "(").append(rowCondition).append(')');
+            }
+        }
+        return builder.toString();
+    }
+    
+    static final long MAX_CACHED_SQL_DELETES = 256;
+    
+}
@@ -0,0 +1,359 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.HibernateMultiLineInsert.EntityPersisterSpy;
+import com.doctusoft.hibernate.extras.ParameterRecorder.RecordedParameters;
+import com.google.common.collect.ImmutableMap;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+import lombok.experimental.Wither;
+import org.hibernate.AssertionFailure;
+import org.hibernate.JDBCException;
+import org.hibernate.Session;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.internal.AbstractSharedSessionContract;
+import org.hibernate.metamodel.spi.MetamodelImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.persister.entity.SingleTableEntityPersister;
+import org.hibernate.pretty.MessageHelper;
+import org.hibernate.sql.Insert;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.*;
+
+// inserts the entities of a whole SINGLE_TABLE hierarchy in common multi-line statements: the columns are the union of
+// the columns of all the subclasses, the ones not mapped by the subclass of a row are set to null
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class HibernateMultiLineHierarchyInsert {
+    
+    public static HibernateMultiLineHierarchyInsert lookup(EntityPersister persister) {
+        requireNonNull(persister, "persister");
+        SessionFactoryImplementor factory = persister.getFactory();
+        MetamodelImplementor metamodel = factory.getMetamodel();
+        EntityPersister root = metamodel.entityPersister(persister.getRootEntityName());
+        if (!(root instanceof SingleTableEntityPersister)) {
+            return null;
+        }
+        
+        SingleTableEntityPersister rootPersister = (SingleTableEntityPersister) root;
+        String tableName = rootPersister.getTableName();
+        Map<String, UnionColumn> unionColumns = new LinkedHashMap<>();
+        for (String columnName : rootPersister.getIdentifierColumnNames()) {
+            unionColumns.put(columnName, new UnionColumn(unionColumns.size(), null, "?"));
+        }
+        List<SubclassInsert> subclassInserts = new ArrayList<>();
+        for (Object entityName : rootPersister.getEntityMetamodel().getSubclassEntityNames()) {
+            EntityPersister subclassPersister = metamodel.entityPersister((String) entityName);
+            if (subclassPersister.getEntityMetamodel().isAbstract()) {
+                // never instantiated, so never inserted
+                continue;
+            }
+            HibernateMultiLineInsert multiLineInsert = HibernateMultiLineInsert.lookup(subclassPersister);
+            if (multiLineInsert == null
+                || multiLineInsert.isIdentityInsert()
+                || multiLineInsert.getDynamicInsertShapes() != null
+                || multiLineInsert.getPersisterSpy().getTableSpan() != 1
+                || !((SingleTableEntityPersister) subclassPersister).getTableName().equals(tableName)) {
+                // every subclass must fit into a single statement with ids generated up front, and the nulls written
+                // for the unmapped columns would skip the column defaults a dynamic insert relies on
+                return null;
+            }
+            SubclassInsert subclassInsert = SubclassInsert.of(multiLineInsert, unionColumns);
+            if (subclassInsert == null) {
+                return null;
+            }
+            subclassInserts.add(subclassInsert);
+        }
+        
+        Insert insert = new Insert(factory.getJdbcServices().getDialect()).setTableName(tableName);
+        int[] nullSqlTypes = new int[unionColumns.size()];
+        for (Map.Entry<String, UnionColumn> column : unionColumns.entrySet()) {
+            insert.addColumn(column.getKey(), column.getValue().writer);
+            Integer sqlType = column.getValue().sqlType;
+            nullSqlTypes[column.getValue().position] = sqlType != null ? sqlType : Types.NULL;
+        }
+        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse(insert.toStatementString());
+        if (sqlInsert == null) {
+            return null;
+        }
+        
+        ImmutableMap.Builder<EntityPersister, SubclassInsert> subclassInsertsByPersister = ImmutableMap.builder();
+        for (SubclassInsert subclassInsert : subclassInserts) {
+            subclassInsert.computeNullColumns(unionColumns.size());
+            subclassInsertsByPersister.put(subclassInsert.multiLineInsert.getPersister(), subclassInsert);
+        }
+        return new HibernateMultiLineHierarchyInsert(
+            rootPersister,
+            subclassInsertsByPersister.build(),
+            sqlInsert,
+            nullSqlTypes,
+            ChunkSizes.unbounded(),
+            BindParameterLimits.forDialect(factory.getJdbcServices().getDialect()));
+    }
+    
+    SingleTableEntityPersister rootPersister;
+    ImmutableMap<EntityPersister, SubclassInsert> subclassInserts;
+    MultiLineSqlInsert sqlInsert;
+    // by union column position
+    int[] nullSqlTypes;
+    
+    @Wither
+    @NonNull
+    ChunkSizes chunkSizes;
+    
+    @Wither
+    int maxBindParameters;
+    
+    public void insertInBatch(Session session, Object[] entities) {
+        
+        int countEntities = entities.length;
+        if (countEntities == 0) return;
+        
+        AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
+        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        // the single row insert serves the calls other than the parameter setters
+        ParameterRecorder recorder = ParameterRecorder.create(() -> jdbcCoordinator
+            .getStatementPreparer()
+            .prepareStatement(sqlInsert.getMultiLineInsertString(1), false));
+        SessionFactoryImplementor factory = rootPersister.getFactory();
+        SubclassInsert[] rowInserts = new SubclassInsert[countEntities];
+        RecordedParameters[] rows = new RecordedParameters[countEntities];
+        try {
+            for (int i = 0; i < countEntities; ++i) {
+                Object entity = entities[i];
+                EntityPersister persister = rootPersister.getSubclassEntityPersister(entity, factory);
+                SubclassInsert subclassInsert = subclassInserts.get(persister);
+                if (subclassInsert == null) {
+                    throw new IllegalArgumentException("Not an entity of the hierarchy of "
+                        + rootPersister.getEntityName() + ": " + entity.getClass().getName());
+                }
+                HibernateMultiLineInsert multiLineInsert = subclassInsert.multiLineInsert;
+                Serializable id = multiLineInsert.generateId(sessionImpl, entity);
+                Object[] fields = multiLineInsert.prepareFields(session, sessionImpl, entity);
+                rowInserts[i] = subclassInsert;
+                rows[i] = subclassInsert.record(sessionImpl, recorder, id, fields);
+            }
+        } catch (SQLException e) {
+            // only raised by the type descriptors, the recorder itself never throws it
+            throw convert(sessionImpl, e, sqlInsert.getMultiLineInsertString(1));
+        } finally {
+            recorder.releaseDelegate(statement -> {
+                jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+                jdbcCoordinator.afterStatementExecution();
+            });
+        }
+        
+        int columnCount = nullSqlTypes.length;
+        int maxRowsPerStatement = BindParameterLimits.maxRowsPerStatement(maxBindParameters, columnCount);
+        for (int offset = 0; offset < countEntities; ) {
+            int countRows = chunkSizes.nextChunkSize(Math.min(countEntities - offset, maxRowsPerStatement));
+            insertRows(sessionImpl, rowInserts, rows, offset, countRows);
+            offset += countRows;
+        }
+    }
+    
+    private void insertRows(
+        AbstractSharedSessionContract sessionImpl,
+        SubclassInsert[] rowInserts,
+        RecordedParameters[] rows,
+        int offset,
+        int countRows) {
+        
+        String sql = sqlInsert.getMultiLineInsertString(countRows);
+        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        int columnCount = nullSqlTypes.length;
+        try {
+            boolean callable = false;
+            PreparedStatement insert = jdbcCoordinator
+                .getStatementPreparer()
+                .prepareStatement(sql, callable);
+            try {
+                for (int i = offset, base = 1; i < offset + countRows; ++i, base += columnCount) {
+                    int[] parameterPositions = rowInserts[i].parameterPositions;
+                    for (int p = 0; p < parameterPositions.length; ++p) {
+                        rows[i].bind(insert, p + 1, base + parameterPositions[p]);
+                    }
+                    for (int position : rowInserts[i].nullPositions) {
+                        insert.setNull(base + position, nullSqlTypes[position]);
+                    }
+                }
+                int rowCount = jdbcCoordinator
+                    .getResultSetReturn()
+                    .executeUpdate(insert);
+                HibernateMultiLineInsert.checkRowCount(countRows, rowCount);
+            } finally {
+                jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(insert);
+                jdbcCoordinator.afterStatementExecution();
+            }
+        } catch (SQLException e) {
+            throw convert(sessionImpl, e, sql);
+        }
+    }
+    
+    private JDBCException convert(AbstractSharedSessionContract sessionImpl, SQLException e, String sql) {
+        return sessionImpl.getFactory()
+            .getServiceRegistry()
+            .getService(JdbcServices.class)
+            .getSqlExceptionHelper()
+            .convert(e, "could not insert: " + MessageHelper.infoString(rootPersister), sql);
+    }
+    
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    private static class UnionColumn {
+        
+        // in the statement, 0 based
+        final int position;
+        // for binding null, e.G. the discriminator is always set
+        final Integer sqlType;
+        // the column write expression around the ? placeholder
+        final String writer;
+        
+    }
+    
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    static class SubclassInsert {
+        
+        static SubclassInsert of(HibernateMultiLineInsert multiLineInsert, Map<String, UnionColumn> unionColumns) {
+            SingleTableEntityPersister persister = (SingleTableEntityPersister) multiLineInsert.getPersister();
+            SessionFactoryImplementor factory = persister.getFactory();
+            EntityPersisterSpy persisterSpy = multiLineInsert.getPersisterSpy();
+            boolean[] propertyInsertability = persister.getPropertyInsertability();
+            String[] columnNames = persisterSpy.getDehydratedColumnNames(propertyInsertability, 0, true);
+            
+            // the sql types of the inserted property columns, the union column of a null value must be bound with one
+            Map<String, Integer> sqlTypes = new LinkedHashMap<>();
+            Map<String, String> writers = new LinkedHashMap<>();
+            Type[] propertyTypes = persister.getPropertyTypes();
+            boolean[][] propertyColumnInsertable = persisterSpy.getPropertyColumnInsertable();
+            for (int i = 0; i < propertyTypes.length; ++i) {
+                if (!propertyInsertability[i]) {
+                    continue;
+                }
+                String[] propertyColumnNames = persister.getPropertyColumnNames(i);
+                String[] propertyColumnWriters = persister.getPropertyColumnWriters(i);
+                int[] propertySqlTypes = propertyTypes[i].sqlTypes(factory);
+                if (propertyColumnNames.length != propertySqlTypes.length
+                    || propertyColumnNames.length != propertyColumnInsertable[i].length) {
+                    throw new AssertionFailure("The columns and the sql types of " + persister.getEntityName() + "."
+                        + persister.getPropertyNames()[i] + " do not match");
+                }
+                for (int k = 0; k < propertyColumnNames.length; ++k) {
+                    // the formula columns have no name and are never inserted
+                    if (propertyColumnInsertable[i][k]) {
+                        sqlTypes.put(propertyColumnNames[k], propertySqlTypes[k]);
+                        writers.put(propertyColumnNames[k], propertyColumnWriters[k]);
+                    }
+                }
+            }
+            
+            boolean discriminatorInsertable = readDiscriminatorInsertable(persister);
+            int[] parameterPositions = new int[columnNames.length + (discriminatorInsertable ? 1 : 0)];
+            for (int p = 0; p < columnNames.length; ++p) {
+                String columnName = columnNames[p];
+                // the id columns are written as plain placeholders
+                String writer = writers.getOrDefault(columnName, "?");
+                parameterPositions[p] = unionColumn(unionColumns, columnName, sqlTypes.get(columnName), writer);
+                if (parameterPositions[p] < 0) {
+                    // the subclasses write the shared column with different expressions
+                    return null;
+                }
+            }
+            Object discriminatorValue = null;
+            if (discriminatorInsertable) {
+                discriminatorValue = persister.getDiscriminatorValue();
+                String discriminatorSQLValue = persister.getDiscriminatorSQLValue();
+                if ("null".equals(discriminatorSQLValue) || "not null".equals(discriminatorSQLValue)) {
+                    // these special markers are never inserted as values
+                    return null;
+                }
+                parameterPositions[columnNames.length] =
+                    unionColumn(unionColumns, persister.getDiscriminatorColumnName(), null, "?");
+                if (parameterPositions[columnNames.length] < 0) {
+                    return null;
+                }
+            }
+            return new SubclassInsert(
+                multiLineInsert,
+                columnNames.length,
+                discriminatorInsertable ? persister.getDiscriminatorType() : null,
+                discriminatorValue,
+                parameterPositions,
+                null);
+        }
+        
+        // the position of the union column, -1 if it is written with another expression
+        private static int unionColumn(
+            Map<String, UnionColumn> unionColumns,
+            String columnName,
+            Integer sqlType,
+            String writer) {
+            UnionColumn unionColumn = unionColumns
+                .computeIfAbsent(columnName, name -> new UnionColumn(unionColumns.size(), sqlType, writer));
+            return unionColumn.writer.equals(writer) ? unionColumn.position : -1;
+        }
+        
+        final HibernateMultiLineInsert multiLineInsert;
+        final int dehydratedParameterCount;
+        final Type discriminatorType;
+        final Object discriminatorValue;
+        // the union column position of each recorded parameter
+        final int[] parameterPositions;
+        // the union column positions not mapped by this subclass
+        int[] nullPositions;
+        
+        void computeNullColumns(int columnCount) {
+            boolean[] mapped = new boolean[columnCount];
+            for (int position : parameterPositions) {
+                mapped[position] = true;
+            }
+            int[] nullPositions = new int[columnCount];
+            int count = 0;
+            for (int position = 0; position < columnCount; ++position) {
+                if (!mapped[position]) {
+                    nullPositions[count++] = position;
+                }
+            }
+            this.nullPositions = Arrays.copyOf(nullPositions, count);
+        }
+        
+        RecordedParameters record(
+            AbstractSharedSessionContract sessionImpl,
+            ParameterRecorder recorder,
+            Serializable id,
+            Object[] fields) throws SQLException {
+            PreparedStatement statement = recorder.getStatement();
+            EntityPersister persister = multiLineInsert.getPersister();
+            multiLineInsert.getPersisterSpy()
+                .dehydrate(sessionImpl, id, fields, persister.getPropertyInsertability(), 0, statement, 1);
+            if (discriminatorType != null) {
+                int index = dehydratedParameterCount + 1;
+                discriminatorType.nullSafeSet(statement, discriminatorValue, index, sessionImpl);
+            }
+            return recorder.takeParameters();
+        }
+        
+        private static boolean readDiscriminatorInsertable(SingleTableEntityPersister persister) {
+            return Reflection.readField(persister, DISCRIMINATOR_INSERTABLE, Boolean.class);
+        }
+        
+        static Field DISCRIMINATOR_INSERTABLE =
+            Reflection.lookupField(SingleTableEntityPersister.class, "discriminatorInsertable");
+        
+    }
+    
+}
@@ -1,38 +1,78 @@
 package com.doctusoft.hibernate.extras;
 
-import com.google.common.base.Throwables;
+import com.doctusoft.hibernate.extras.MultiLineSqlUpsert.ConflictAction;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Ints;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.NonNull;
 import lombok.Value;
+import lombok.experimental.Wither;
+import org.hibernate.ConnectionReleaseMode;
 import org.hibernate.HibernateException;
+import org.hibernate.JDBCException;
+import org.hibernate.LockMode;
 import org.hibernate.Session;
 import org.hibernate.StaleStateException;
-import org.hibernate.engine.internal.Versioning;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL81Dialect;
 import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
 import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.internal.Versioning;
 import org.hibernate.engine.spi.ExecuteUpdateResultCheckStyle;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
 import org.hibernate.id.*;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.PooledLoOptimizer;
+import org.hibernate.id.enhanced.PooledLoThreadLocalOptimizer;
+import org.hibernate.id.enhanced.PooledOptimizer;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
 import org.hibernate.internal.AbstractSharedSessionContract;
+import org.hibernate.internal.util.collections.ArrayHelper;
 import org.hibernate.jdbc.TooManyRowsAffectedException;
 import org.hibernate.persister.entity.AbstractEntityPersister;
 import org.hibernate.persister.entity.EntityPersister;
-import org.hibernate.persister.entity.SingleTableEntityPersister;
 import org.hibernate.pretty.MessageHelper;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
 import org.hibernate.service.spi.ServiceRegistryImplementor;
-import org.hibernate.tuple.InMemoryValueGenerationStrategy;
-import org.hibernate.tuple.ValueGenerator;
-import org.hibernate.tuple.entity.EntityMetamodel;
+import org.hibernate.type.Type;
+import org.hibernate.type.TypeHelper;
 
 import java.io.Serializable;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.*;
-import java.util.function.*;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
 
+import static com.doctusoft.hibernate.extras.Reflection.*;
 import static java.util.Objects.*;
 
 @Value
@@ -41,123 +81,752 @@ public class HibernateMultiLineInsert {
     
     public static final HibernateMultiLineInsert lookup(EntityPersister persister) {
         requireNonNull(persister, "persister");
-        if (!isSingleTable(persister)) {
-            // there would be too many special cases unsupported for multi-table multi-line inserts
-            return null;
-        }
-        if (persister.getEntityMetamodel().isDynamicInsert()) {
-            // shouldn't risk dynamic insertable entities due to DB-level default value inconsistencies
-            // TODO this could be an option
+        if (!(persister instanceof AbstractEntityPersister)) {
+            // custom persisters may write the entities any way
             return null;
         }
         IdentifierGenerator identifierGenerator = persister.getIdentifierGenerator();
-        if (!SUPPORTED_ID_GENERATORS.contains(identifierGenerator.getClass())) {
+        boolean identityInsert = identifierGenerator instanceof IdentityGenerator;
+        if (identityInsert) {
+            if (!supportsMultiLineGeneratedKeys(persister)) {
+                // the ids of all the rows can only be read back, if the driver returns a generated key for each
+                return null;
+            }
+        } else if (!isSupportedIdentifierGenerator(identifierGenerator)) {
             // it's only safe to insert multiple lines in one statement, if the ids are set/generated prior insertion
-            // (without calling the DB)
+            // (without calling the DB for each row)
             return null;
         }
         EntityPersisterSpy persisterSpy = EntityPersisterSpy.spyOn(persister);
-        if (persisterSpy.insertCallable) {
-            // multi-line syntax is not applicable for custom stored procedure calls
-            return null;
+        for (int j = 0; j < persisterSpy.tableSpan; ++j) {
+            if (persisterSpy.insertCallable[j] && !persisterSpy.inverseTable[j]) {
+                // multi-line syntax is not applicable for custom stored procedure calls
+                return null;
+            }
         }
-        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse(persisterSpy.sqlInsertString);
-        if (sqlInsert == null) {
+        boolean dynamicInsert = persister.getEntityMetamodel().isDynamicInsert();
+        // the static insert strings are used for dynamic insert entities too, if all the properties are non-null
+        InsertShape insertShape = InsertShape.create(
+            persister, persisterSpy, identityInsert, persister.getPropertyInsertability(), false);
+        if (insertShape == null) {
             // some unknown insert syntax, e.G. a provided customSqlInsert
             return null;
         }
         return new HibernateMultiLineInsert(
-            (SingleTableEntityPersister) persister,
+            (AbstractEntityPersister) persister,
             persisterSpy,
             identifierGenerator,
-            sqlInsert);
+            identityInsert,
+            insertShape,
+            dynamicInsert ? createDynamicInsertShapes(persister, persisterSpy, identityInsert) : null,
+            PreInsertPlan.of(persister),
+            ChunkSizes.unbounded(),
+            BindParameterLimits.forDialect(persister.getFactory().getJdbcServices().getDialect()),
+            1,
+            false,
+            false,
+            null);
+    }
+    
+    private static LoadingCache<BitSet, InsertShape> createDynamicInsertShapes(
+        EntityPersister persister,
+        EntityPersisterSpy persisterSpy,
+        boolean identityInsert) {
+        return CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_DYNAMIC_INSERT_SHAPES)
+            .build(CacheLoader.from(includedProperties -> {
+                boolean[] includeProperty = new boolean[persister.getPropertyInsertability().length];
+                includedProperties.stream().forEach(i -> includeProperty[i] = true);
+                InsertShape insertShape =
+                    InsertShape.create(persister, persisterSpy, identityInsert, includeProperty, true);
+                if (insertShape == null) {
+                    throw new HibernateException("Unexpected dynamic insert sql of " + persister.getEntityName());
+                }
+                return insertShape;
+            }));
     }
     
-    private static boolean isSingleTable(EntityPersister persister) {
-        if (persister instanceof SingleTableEntityPersister) {
-            return ((SingleTableEntityPersister) persister).getTableSpan() == 1;
+    private static boolean isSupportedIdentifierGenerator(IdentifierGenerator identifierGenerator) {
+        if (SUPPORTED_ID_GENERATORS.contains(identifierGenerator.getClass())) {
+            return true;
+        }
+        if (identifierGenerator instanceof SequenceStyleGenerator) {
+            // pooled optimizers hand out a whole block of ids per sequence call, so generating the ids of a batch
+            // up front takes only one DB call per incrementSize rows
+            Optimizer optimizer = ((SequenceStyleGenerator) identifierGenerator).getOptimizer();
+            return POOLED_OPTIMIZERS.contains(optimizer.getClass()) && optimizer.getIncrementSize() > 1;
         }
         return false;
     }
     
-    SingleTableEntityPersister persister;
+    private boolean supportsDefaultKeyword() {
+        Dialect dialect = persister.getFactory().getJdbcServices().getDialect();
+        return DEFAULT_KEYWORD_DIALECTS.stream().anyMatch(supported -> supported.isInstance(dialect));
+    }
+    
+    private static boolean supportsMultiLineGeneratedKeys(EntityPersister persister) {
+        SessionFactoryImplementor factory = persister.getFactory();
+        if (!factory.getSessionFactoryOptions().isGetGeneratedKeysEnabled()) {
+            return false;
+        }
+        Dialect dialect = factory.getJdbcServices().getDialect();
+        return MULTI_LINE_GENERATED_KEYS_DIALECTS.stream().anyMatch(supported -> supported.isInstance(dialect));
+    }
+    
+    AbstractEntityPersister persister;
     EntityPersisterSpy persisterSpy;
     IdentifierGenerator identifierGenerator;
-    MultiLineSqlInsert sqlInsert;
+    boolean identityInsert;
+    // all the insertable properties
+    InsertShape insertShape;
+    // by the properties included in a dynamic insert, null if the entity is not dynamic insert
+    LoadingCache<BitSet, InsertShape> dynamicInsertShapes;
+    PreInsertPlan preInsertPlan;
+    
+    @Wither
+    @NonNull
+    ChunkSizes chunkSizes;
+    
+    @Wither
+    int maxBindParameters;
+    
+    // the number of equally sized multi-line statements sent in one JDBC batch, 1 disables JDBC batching
+    @Wither
+    int jdbcBatchSize;
+    
+    // adds the inserted entities to the persistence context of the session as managed ones, like a flushed persist
+    @Wither
+    boolean manageEntities;
+    
+    // writes DEFAULT into the value lines instead of the null properties of a dynamic insert entity, so that all the
+    // rows fit the same statement (H2, MySQL and PostgreSQL)
+    @Wither
+    boolean nullsAsDefault;
+    
+    // set for the statements of upsertInBatch
+    @Wither(AccessLevel.PRIVATE)
+    ConflictAction conflictAction;
     
     public void insertInBatch(Session session, Object[] entities) {
+        insertEntities(session, entities);
+    }
+    
+    // inserts the entities like insertInBatch, but a failed chunk is rolled back to a savepoint and split in halves
+    // until the failing rows are found, the rest is still inserted in multi-line chunks, returns the failed entities
+    // with their generated ids reset to the unsaved value, the savepoints are set on the physical connection, so it
+    // must be held until the end of the transaction, not released after each statement, e.G. by default under JTA
+    public List<FailedInsert> insertIsolatingFailures(Session session, Object[] entities) {
         
         int countEntities = entities.length;
-        if (countEntities == 0) return;
+        List<FailedInsert> failures = new ArrayList<>();
+        if (countEntities == 0) return failures;
         
         AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
-        EntityMetamodel entityMetamodel = persister.getEntityMetamodel();
-        List<BiConsumer<Object, Object[]>> preInsertInMemoryValueGenerators = new ArrayList<>();
-        if (entityMetamodel.isVersioned()) {
-            preInsertInMemoryValueGenerators.add((entity, fields) -> {
-                boolean substitute = Versioning.seedVersion(
-                    fields,
-                    persister.getVersionProperty(),
-                    persister.getVersionType(),
-                    sessionImpl
-                );
-                if (substitute) {
-                    persister.setPropertyValues(entity, fields);
+        PhysicalConnectionHandlingMode connectionHandlingMode =
+            sessionImpl.getJdbcCoordinator().getLogicalConnection().getConnectionHandlingMode();
+        if (connectionHandlingMode.getReleaseMode() == ConnectionReleaseMode.AFTER_STATEMENT) {
+            throw new HibernateException("The savepoints would be lost with the connection released after each "
+                + "statement: " + connectionHandlingMode);
+        }
+        Serializable[] ids = new Serializable[countEntities];
+        Object[][] fields = new Object[countEntities][];
+        for (int i = 0; i < countEntities; ++i) {
+            Object entity = entities[i];
+            if (!identityInsert) {
+                ids[i] = generateId(sessionImpl, entity);
+            }
+            fields[i] = prepareFields(session, sessionImpl, entity);
+        }
+        
+        boolean[] inserted = new boolean[countEntities];
+        int maxRowsPerStatement =
+            BindParameterLimits.maxRowsPerStatement(maxBindParameters, Ints.max(insertShape.parameterCountsPerRow));
+        for (int offset = 0; offset < countEntities; ) {
+            int countRows = chunkSizes.nextChunkSize(Math.min(countEntities - offset, maxRowsPerStatement));
+            insertBisecting(sessionImpl, entities, ids, fields, offset, countRows, inserted, failures);
+            offset += countRows;
+        }
+        
+        if (!identityInsert && !(identifierGenerator instanceof Assigned)) {
+            for (FailedInsert failure : failures) {
+                // the generated id was never written, the entity may be persisted again
+                Object entity = failure.getEntity();
+                persister.resetIdentifier(entity, ids[failure.getIndex()], persister.getVersion(entity), sessionImpl);
+            }
+        }
+        
+        List<Integer> insertedIndexes = new ArrayList<>(countEntities - failures.size());
+        for (int i = 0; i < countEntities; ++i) {
+            if (inserted[i]) {
+                insertedIndexes.add(i);
+                if (identityInsert) {
+                    persister.setIdentifier(entities[i], ids[i], sessionImpl);
+                }
+            }
+        }
+        
+        if (manageEntities) {
+            registerManagedEntities(
+                sessionImpl,
+                insertedIndexes.stream().map(i -> entities[i]).toArray(),
+                insertedIndexes.stream().map(i -> ids[i]).toArray(Serializable[]::new),
+                insertedIndexes.stream().map(i -> fields[i]).toArray(Object[][]::new));
+        }
+        return failures;
+    }
+    
+    private void insertBisecting(
+        AbstractSharedSessionContract sessionImpl,
+        Object[] entities,
+        Serializable[] ids,
+        Object[][] fields,
+        int offset,
+        int countRows,
+        boolean[] inserted,
+        List<FailedInsert> failures) {
+        
+        // the natively generated ids are only taken from a successful insert
+        Serializable[] chunkIds = Arrays.copyOfRange(ids, offset, offset + countRows);
+        Savepoint savepoint = setSavepoint(sessionImpl);
+        try {
+            insertPrepared(sessionImpl, chunkIds, Arrays.copyOfRange(fields, offset, offset + countRows));
+        } catch (JDBCException e) {
+            try {
+                rollbackToSavepoint(sessionImpl, savepoint);
+            } catch (RuntimeException rollbackFailure) {
+                rollbackFailure.addSuppressed(e);
+                throw rollbackFailure;
+            }
+            if (countRows == 1) {
+                failures.add(FailedInsert.of(offset, entities[offset], e));
+                return;
+            }
+            // the halves are split into chunks of the configured sizes too, e.G. to reuse the statements of buckets
+            int maxHalf = (countRows + 1) / 2;
+            int end = offset + countRows;
+            for (int chunkOffset = offset; chunkOffset < end; ) {
+                int countChunk = chunkSizes.nextChunkSize(Math.min(end - chunkOffset, maxHalf));
+                insertBisecting(sessionImpl, entities, ids, fields, chunkOffset, countChunk, inserted, failures);
+                chunkOffset += countChunk;
+            }
+            return;
+        }
+        releaseSavepoint(sessionImpl, savepoint);
+        System.arraycopy(chunkIds, 0, ids, offset, countRows);
+        Arrays.fill(inserted, offset, offset + countRows, true);
+    }
+    
+    private Savepoint setSavepoint(AbstractSharedSessionContract sessionImpl) {
+        try {
+            return sessionImpl.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection().setSavepoint();
+        } catch (SQLException e) {
+            throw convertSavepointException(sessionImpl, e, "could not set savepoint");
+        }
+    }
+    
+    private void rollbackToSavepoint(AbstractSharedSessionContract sessionImpl, Savepoint savepoint) {
+        try {
+            sessionImpl.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection().rollback(savepoint);
+        } catch (SQLException e) {
+            throw convertSavepointException(sessionImpl, e, "could not roll back to savepoint");
+        }
+    }
+    
+    private void releaseSavepoint(AbstractSharedSessionContract sessionImpl, Savepoint savepoint) {
+        try {
+            sessionImpl.getJdbcCoordinator().getLogicalConnection().getPhysicalConnection().releaseSavepoint(savepoint);
+        } catch (SQLException e) {
+            throw convertSavepointException(sessionImpl, e, "could not release savepoint");
+        }
+    }
+    
+    private JDBCException convertSavepointException(
+        AbstractSharedSessionContract sessionImpl,
+        SQLException e,
+        String message) {
+        return sessionImpl.getFactory()
+            .getServiceRegistry()
+            .getService(JdbcServices.class)
+            .getSqlExceptionHelper()
+            .convert(e, message + ": " + MessageHelper.infoString(persister));
+    }
+    
+    // pulls the entities in chunks of entitiesPerChunk, and inserts each chunk before pulling the next one, so that
+    // only one chunk is referenced at a time (unless the entities are managed), returns the number of entities
+    public long insertInChunks(Session session, Iterator<?> entities, int entitiesPerChunk) {
+        requireNonNull(entities, "entities");
+        if (entitiesPerChunk < 1) {
+            throw new IllegalArgumentException("entitiesPerChunk must be positive: " + entitiesPerChunk);
+        }
+        long countEntities = 0;
+        Object[] chunk = new Object[entitiesPerChunk];
+        while (entities.hasNext()) {
+            int countChunk = 0;
+            while (countChunk < entitiesPerChunk && entities.hasNext()) {
+                chunk[countChunk++] = entities.next();
+            }
+            insertEntities(session, countChunk == entitiesPerChunk ? chunk : Arrays.copyOf(chunk, countChunk));
+            countEntities += countChunk;
+            Arrays.fill(chunk, null);
+        }
+        return countEntities;
+    }
+    
+    public long insertInChunks(Session session, Spliterator<?> entities, int entitiesPerChunk) {
+        return insertInChunks(session, Spliterators.iterator(entities), entitiesPerChunk);
+    }
+    
+    // the stream is consumed, but not closed
+    public long insertInChunks(Session session, Stream<?> entities, int entitiesPerChunk) {
+        return insertInChunks(session, entities.iterator(), entitiesPerChunk);
+    }
+    
+    // inserts rows of property values laid out like persister.getPropertyValues, without any entity instances,
+    // the null ids are generated and written to ids, the states get the seeded versions and the generated values,
+    // only the generators of timestamps are applied to states, the others could read the missing entity
+    public void insertStates(Session session, Serializable[] ids, Object[][] states) {
+        requireNonNull(ids, "ids");
+        requireNonNull(states, "states");
+        if (ids.length != states.length) {
+            throw new IllegalArgumentException("The number of ids and states differ: " + ids.length + " != "
+                + states.length);
+        }
+        if (manageEntities) {
+            throw new IllegalStateException("Only entity instances can be managed");
+        }
+        
+        AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
+        int propertySpan = persister.getPropertyTypes().length;
+        for (int i = 0; i < states.length; ++i) {
+            if (states[i] == null || states[i].length != propertySpan) {
+                throw new IllegalArgumentException("The state of row " + i + " does not have the " + propertySpan
+                    + " properties of " + persister.getEntityName());
+            }
+            if (identityInsert) {
+                if (ids[i] != null) {
+                    throw new IllegalArgumentException("The ids of identity rows are generated by the database");
+                }
+            } else if (ids[i] == null) {
+                if (identifierGenerator instanceof Assigned) {
+                    throw new IdentifierGenerationException("ids for this class must be manually assigned: "
+                        + persister.getEntityName());
                 }
-            });
-        }
-        if (entityMetamodel.hasPreInsertGeneratedValues()) {
-            InMemoryValueGenerationStrategy[] strategies = entityMetamodel.getInMemoryValueGenerationStrategies();
-            for (int i = 0; i < strategies.length; i++) {
-                InMemoryValueGenerationStrategy strategy = strategies[i];
-                if (strategy != null && strategy.getGenerationTiming().includesInsert()) {
-                    final int iAttr = i;
-                    final ValueGenerator valueGenerator = strategy.getValueGenerator();
-                    preInsertInMemoryValueGenerators.add((object, fields) -> {
-                        fields[iAttr] = valueGenerator.generateValue(session, object);
-                        persister.setPropertyValue(object, iAttr, fields[iAttr]);
-                    });
+                // the supported generators don't read the entity
+                ids[i] = identifierGenerator.generate(sessionImpl, null);
+            }
+            preInsertPlan.apply(session, sessionImpl, null, states[i]);
+        }
+        
+        if (states.length > 0) {
+            insertPrepared(sessionImpl, ids, states);
+        }
+    }
+    
+    // inserts the rows of a buffer created for this entity, the null ids are generated and written to the rows,
+    // the rows are kept to be cleared by the caller
+    public void insertColumnar(Session session, ColumnarRows rows) {
+        requireNonNull(rows, "rows");
+        if (!rows.getMultiLineInsert().getPersister().equals(persister)) {
+            throw new IllegalArgumentException("The rows are not of " + persister.getEntityName());
+        }
+        if (manageEntities || conflictAction != null || nullsAsDefault || jdbcBatchSize != 1) {
+            // the rows are bound directly into one statement per chunk
+            throw new IllegalStateException("Columnar rows are only inserted as plain rows without JDBC batching");
+        }
+        
+        AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
+        int countRows = rows.size();
+        for (int i = 0; i < countRows; ++i) {
+            if (rows.isIdNull(i)) {
+                if (identifierGenerator instanceof Assigned) {
+                    throw new IdentifierGenerationException("ids for this class must be manually assigned: "
+                        + persister.getEntityName());
                 }
+                // the supported generators don't read the entity
+                rows.setId(i, identifierGenerator.generate(sessionImpl, null));
             }
         }
         
-        String sql = sqlInsert.createMultiLineInsertString(countEntities);
+        int maxRowsPerStatement =
+            BindParameterLimits.maxRowsPerStatement(maxBindParameters, insertShape.parameterCountsPerRow[0]);
+        for (int offset = 0; offset < countRows; ) {
+            int countChunk = chunkSizes.nextChunkSize(Math.min(countRows - offset, maxRowsPerStatement));
+            insertColumnarRows(sessionImpl, rows, offset, countChunk);
+            offset += countChunk;
+        }
+    }
+    
+    private void insertColumnarRows(
+        AbstractSharedSessionContract sessionImpl,
+        ColumnarRows rows,
+        int offset,
+        int countRows) {
         
+        String sql = insertShape.sqlInserts[0].getMultiLineInsertString(countRows);
+        executeInsert(sessionImpl, sql, false, (jdbcCoordinator, insert) -> {
+            int idx = 1;
+            for (int i = offset; i < offset + countRows; ++i) {
+                idx = rows.bindRow(insert, i, idx, sessionImpl);
+            }
+            int rowCount = jdbcCoordinator
+                .getResultSetReturn()
+                .executeUpdate(insert);
+            checkRowCount(countRows, rowCount);
+            return null;
+        });
+    }
+    
+    // inserts the entities of new keys, and ignores or updates the rows of the existing ones
+    public UpsertResult upsertInBatch(Session session, Object[] entities, ConflictAction conflictAction) {
+        requireNonNull(conflictAction, "conflictAction");
+        if (identityInsert || persisterSpy.tableSpan != 1) {
+            // the conflicts are detected by the primary key, which must be known up front and unique in one table
+            throw new HibernateException("Multi-line upsert is only supported for single table entities with ids "
+                + "generated before insertion: " + MessageHelper.infoString(persister));
+        }
+        if (manageEntities && conflictAction == ConflictAction.IGNORE) {
+            throw new IllegalStateException("The entities of the ignored rows cannot be managed");
+        }
+        if (conflictAction == ConflictAction.UPDATE && persister.isVersioned()) {
+            // the existing rows would get the seeded initial version, and the stale updates of their concurrently
+            // loaded entities would pass the optimistic lock check
+            throw new HibernateException("Multi-line upsert cannot update the rows of versioned entities: "
+                + MessageHelper.infoString(persister));
+        }
+        return withConflictAction(conflictAction).insertEntities(session, entities);
+    }
+    
+    private UpsertResult insertEntities(Session session, Object[] entities) {
+        
+        int countEntities = entities.length;
+        if (countEntities == 0) return UpsertResult.EMPTY;
+        
+        AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
         Serializable[] ids = new Serializable[countEntities];
         Object[][] fields = new Object[countEntities][];
         for (int i = 0; i < countEntities; ++i) {
             Object entity = entities[i];
-            ids[i] = identifierGenerator.generate(sessionImpl, entity);
-            fields[i] = persister.getPropertyValues(entity);
-            Object[] entityFields = fields[i];
-            preInsertInMemoryValueGenerators.forEach(generator -> generator.accept(entity, entityFields));
+            if (!identityInsert) {
+                ids[i] = generateId(sessionImpl, entity);
+            }
+            fields[i] = prepareFields(session, sessionImpl, entity);
         }
         
-        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        UpsertResult result = insertPrepared(sessionImpl, ids, fields);
+        
+        if (identityInsert) {
+            for (int i = 0; i < countEntities; ++i) {
+                persister.setIdentifier(entities[i], ids[i], sessionImpl);
+            }
+        }
+        
+        if (manageEntities) {
+            registerManagedEntities(sessionImpl, entities, ids, fields);
+        }
+        return result;
+    }
+    
+    Serializable generateId(AbstractSharedSessionContract sessionImpl, Object entity) {
+        Serializable id = identifierGenerator.generate(sessionImpl, entity);
+        if (!(identifierGenerator instanceof Assigned)) {
+            persister.setIdentifier(entity, id, sessionImpl);
+        }
+        if (manageEntities) {
+            // fail before writing anything
+            sessionImpl.getPersistenceContext().checkUniqueness(sessionImpl.generateEntityKey(id, persister), entity);
+        }
+        return id;
+    }
+    
+    // the property values to insert, after the version seeding and the in-memory value generation
+    Object[] prepareFields(Session session, AbstractSharedSessionContract sessionImpl, Object entity) {
+        Object[] fields = persister.getPropertyValues(entity);
+        preInsertPlan.apply(session, sessionImpl, entity, fields);
+        return fields;
+    }
+    
+    private void registerManagedEntities(
+        AbstractSharedSessionContract sessionImpl,
+        Object[] entities,
+        Serializable[] ids,
+        Object[][] fields) {
+        
+        PersistenceContext persistenceContext = sessionImpl.getPersistenceContext();
+        Type[] propertyTypes = persister.getPropertyTypes();
+        boolean[] propertyUpdateability = persister.getPropertyUpdateability();
+        for (int i = 0; i < entities.length; ++i) {
+            // the loaded state is the snapshot for dirty checking, it must not share mutable values with the entity
+            TypeHelper.deepCopy(fields[i], propertyTypes, propertyUpdateability, fields[i], sessionImpl);
+            persistenceContext.addEntity(
+                entities[i],
+                Status.MANAGED,
+                fields[i],
+                sessionImpl.generateEntityKey(ids[i], persister),
+                Versioning.getVersion(fields[i], persister),
+                LockMode.WRITE,
+                true, // existsInDatabase
+                persister,
+                false); // disableVersionIncrement
+            if (conflictAction == null) {
+                // the rows updated by an upsert existed before, and they cannot be told from the inserted ones
+                persistenceContext.registerInsertedKey(persister, ids[i]);
+            }
+        }
+        
+        EventListenerGroup<PostInsertEventListener> postInsertListeners = persister.getFactory()
+            .getServiceRegistry()
+            .getService(EventListenerRegistry.class)
+            .getEventListenerGroup(EventType.POST_INSERT);
+        if (postInsertListeners.isEmpty() || !(sessionImpl instanceof EventSource)) {
+            // stateless sessions don't fire events either
+            return;
+        }
+        EventSource eventSource = (EventSource) sessionImpl;
+        for (int i = 0; i < entities.length; ++i) {
+            PostInsertEvent event = new PostInsertEvent(entities[i], ids[i], fields[i], persister, eventSource);
+            for (PostInsertEventListener listener : postInsertListeners.listeners()) {
+                listener.onPostInsert(event);
+            }
+        }
+    }
+    
+    // inserts the rows of already generated ids and prepared states, the natively generated ids are written to ids
+    UpsertResult insertPrepared(AbstractSharedSessionContract sessionImpl, Serializable[] ids, Object[][] fields) {
+        if (dynamicInsertShapes == null) {
+            return insertShape(sessionImpl, insertShape, ids, fields);
+        }
+        if (nullsAsDefault && insertShape.placeholderProperties != null && supportsDefaultKeyword()) {
+            // all the rows fit the static insert strings, the null properties get the column defaults like the
+            // omitted ones of a dynamic insert
+            return insertShape(sessionImpl, insertShape.withNullsAsDefault(true), ids, fields);
+        }
+        // one statement for each run of consecutive rows with the same non-null properties, so that the rows are
+        // written in their original order, e.G. a parent row before the child rows referencing it
+        UpsertResult result = UpsertResult.EMPTY;
+        int runStart = 0;
+        BitSet runProperties = null;
+        for (int i = 0; i < fields.length; ++i) {
+            BitSet includedProperties = getIncludedProperties(fields[i]);
+            if (runProperties != null && !includedProperties.equals(runProperties)) {
+                result = result.plus(insertRun(sessionImpl, runProperties, ids, fields, runStart, i));
+                runStart = i;
+            }
+            runProperties = includedProperties;
+        }
+        if (runProperties != null) {
+            result = result.plus(insertRun(sessionImpl, runProperties, ids, fields, runStart, fields.length));
+        }
+        return result;
+    }
+    
+    // same as AbstractEntityPersister.getPropertiesToInsert
+    private BitSet getIncludedProperties(Object[] fields) {
         boolean[] propertyInsertability = persister.getPropertyInsertability();
-        try {
-            boolean callable = false;
-            PreparedStatement insert = jdbcCoordinator
-                .getStatementPreparer()
-                .prepareStatement(sql, callable);
-            
-            try {
+        BitSet includedProperties = new BitSet(propertyInsertability.length);
+        for (int k = 0; k < propertyInsertability.length; ++k) {
+            if (propertyInsertability[k] && fields[k] != null) {
+                includedProperties.set(k);
+            }
+        }
+        return includedProperties;
+    }
+    
+    private UpsertResult insertRun(
+        AbstractSharedSessionContract sessionImpl,
+        BitSet includedProperties,
+        Serializable[] ids,
+        Object[][] fields,
+        int from,
+        int to) {
+        
+        boolean allIncluded =
+            includedProperties.cardinality() == ArrayHelper.countTrue(persister.getPropertyInsertability());
+        InsertShape shape = allIncluded
+            ? insertShape
+            : dynamicInsertShapes.getUnchecked(includedProperties);
+        if (from == 0 && to == fields.length) {
+            return insertShape(sessionImpl, shape, ids, fields);
+        }
+        Serializable[] runIds = Arrays.copyOfRange(ids, from, to);
+        UpsertResult result = insertShape(sessionImpl, shape, runIds, Arrays.copyOfRange(fields, from, to));
+        if (identityInsert) {
+            System.arraycopy(runIds, 0, ids, from, runIds.length);
+        }
+        return result;
+    }
+    
+    // returns the rows of the root table
+    private UpsertResult insertShape(
+        AbstractSharedSessionContract sessionImpl,
+        InsertShape shape,
+        Serializable[] ids,
+        Object[][] fields) {
+        
+        UpsertResult result = null;
+        for (int j = 0; j < persisterSpy.tableSpan; ++j) {
+            if (shape.sqlInserts[j] == null) {
+                continue;
+            }
+            if (persisterSpy.nullableTable[j]) {
+                // like Hibernate, an optional secondary table gets no row if all of its properties are null
+                int countRows = 0;
+                Serializable[] tableIds = new Serializable[ids.length];
+                Object[][] tableFields = new Object[fields.length][];
+                for (int i = 0; i < fields.length; ++i) {
+                    if (!persisterSpy.isAllNull(fields[i], j)) {
+                        tableIds[countRows] = ids[i];
+                        tableFields[countRows] = fields[i];
+                        ++countRows;
+                    }
+                }
+                insertTable(
+                    sessionImpl, shape, j, Arrays.copyOf(tableIds, countRows), Arrays.copyOf(tableFields, countRows));
+            } else {
+                UpsertResult tableResult = insertTable(sessionImpl, shape, j, ids, fields);
+                if (result == null) {
+                    result = tableResult;
+                }
+            }
+        }
+        return result;
+    }
+    
+    private UpsertResult insertTable(
+        AbstractSharedSessionContract sessionImpl,
+        InsertShape shape,
+        int table,
+        Serializable[] ids,
+        Object[][] fields) {
+        
+        MultiLineSqlUpsert upsert = conflictAction == null ? null : createUpsert(shape, table);
+        int countEntities = fields.length;
+        int maxRowsPerStatement =
+            BindParameterLimits.maxRowsPerStatement(maxBindParameters, shape.parameterCountsPerRow[table]);
+        // the drivers don't reliably return the generated keys of a whole JDBC batch
+        boolean identityInsert = this.identityInsert && table == 0;
+        // the DEFAULT keywords make the statements of the chunks differ, and the update count of each upsert is needed
+        int jdbcBatchSize = identityInsert || shape.nullsAsDefault || upsert != null ? 1 : this.jdbcBatchSize;
+        UpsertResult result = UpsertResult.EMPTY;
+        for (int offset = 0; offset < countEntities; ) {
+            int countRows = chunkSizes.nextChunkSize(Math.min(countEntities - offset, maxRowsPerStatement));
+            int countChunks = 1;
+            while (countChunks < jdbcBatchSize) {
+                int remaining = countEntities - offset - countChunks * countRows;
+                if (remaining == 0 || chunkSizes.nextChunkSize(Math.min(remaining, maxRowsPerStatement)) != countRows) {
+                    break;
+                }
+                ++countChunks;
+            }
+            result = result.plus(
+                insertRows(sessionImpl, shape, upsert, table, ids, fields, offset, countRows, countChunks));
+            offset += countChunks * countRows;
+        }
+        return result;
+    }
+    
+    private MultiLineSqlUpsert createUpsert(InsertShape shape, int table) {
+        Dialect dialect = persister.getFactory().getJdbcServices().getDialect();
+        MultiLineSqlUpsert upsert = MultiLineSqlUpsert.forDialect(
+            dialect,
+            conflictAction,
+            persisterSpy.getKeyColumnNames(table),
+            persisterSpy.getUpsertUpdateColumnNames(shape.includeProperty, table));
+        if (upsert == null) {
+            throw new HibernateException("Multi-line upsert is not supported by " + dialect);
+        }
+        return upsert;
+    }
+    
+    private UpsertResult insertRows(
+        AbstractSharedSessionContract sessionImpl,
+        InsertShape shape,
+        MultiLineSqlUpsert upsert,
+        int table,
+        Serializable[] ids,
+        Object[][] fields,
+        int offset,
+        int countRows,
+        int countChunks) {
+        
+        String sql;
+        if (shape.nullsAsDefault) {
+            List<BitSet> defaultPlaceholdersOfRows = new ArrayList<>(countRows);
+            for (int i = offset; i < offset + countRows; ++i) {
+                defaultPlaceholdersOfRows.add(shape.getDefaultPlaceholders(table, fields[i]));
+            }
+            sql = shape.sqlInserts[table].getMultiLineInsertString(defaultPlaceholdersOfRows);
+        } else {
+            sql = shape.sqlInserts[table].getMultiLineInsertString(countRows);
+        }
+        if (upsert != null) {
+            sql = upsert.toUpsertString(sql);
+        }
+        boolean identityInsert = this.identityInsert && table == 0;
+        return executeInsert(sessionImpl, sql, identityInsert, (jdbcCoordinator, insert) -> {
+            boolean batched = countChunks > 1;
+            int i = offset;
+            for (int chunk = 0; chunk < countChunks; ++chunk) {
                 int idx = 1;
                 // Write the values of fields onto the prepared statement - we MUST use the state at the time the
                 // insert was issued (cos of foreign key constraints). Not necessarily the object's current state
-                for (int i = 0; i < countEntities; ++i) {
-                    idx = persisterSpy.dehydrate(sessionImpl, ids[i], fields[i], propertyInsertability, insert, idx);
+                for (int end = i + countRows; i < end; ++i) {
+                    idx = persisterSpy.dehydrate(
+                        sessionImpl, ids[i], fields[i], shape.getBoundProperties(fields[i]), table, insert, idx);
+                }
+                if (batched) {
+                    insert.addBatch();
+                }
+            }
+            if (batched) {
+                int[] rowCounts = insert.executeBatch();
+                for (int rowCount : rowCounts) {
+                    if (rowCount != Statement.SUCCESS_NO_INFO) {
+                        checkRowCount(countRows, rowCount);
+                    }
                 }
+            } else if (upsert != null && upsert.isReturningInsertedFlags()) {
+                return readUpsertResult(jdbcCoordinator.getResultSetReturn().extract(insert), countRows);
+            } else if (upsert != null) {
                 int rowCount = jdbcCoordinator
                     .getResultSetReturn()
                     .executeUpdate(insert);
-                if (countEntities > rowCount) {
-                    throw new StaleStateException("Unexpected row count: " + rowCount + "; expected: " + countEntities);
-                }
-                if (countEntities < rowCount) {
-                    String msg = "Unexpected row count: " + rowCount + "; expected: " + countEntities;
-                    throw new TooManyRowsAffectedException(msg, countEntities, rowCount);
+                return upsert.countRows(countRows, rowCount);
+            } else {
+                int rowCount = jdbcCoordinator
+                    .getResultSetReturn()
+                    .executeUpdate(insert);
+                checkRowCount(countRows, rowCount);
+                if (identityInsert) {
+                    readGeneratedKeys(sessionImpl, insert, ids, offset, countRows);
                 }
+            }
+            return UpsertResult.of(countChunks * countRows, 0, 0);
+        });
+    }
+    
+    // prepares the statement of sql, executes it by execution and releases it, the SQLExceptions are converted
+    private <T> T executeInsert(
+        AbstractSharedSessionContract sessionImpl,
+        String sql,
+        boolean returnGeneratedKeys,
+        InsertExecution<T> execution) {
+        
+        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        try {
+            PreparedStatement insert;
+            if (returnGeneratedKeys) {
+                insert = jdbcCoordinator
+                    .getStatementPreparer()
+                    .prepareStatement(sql, PreparedStatement.RETURN_GENERATED_KEYS);
+            } else {
+                boolean callable = false;
+                insert = jdbcCoordinator
+                    .getStatementPreparer()
+                    .prepareStatement(sql, callable);
+            }
+            
+            try {
+                return execution.execute(jdbcCoordinator, insert);
             } finally {
                 jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(insert);
                 jdbcCoordinator.afterStatementExecution();
@@ -171,97 +840,436 @@ public class HibernateMultiLineInsert {
         }
     }
     
+    private interface InsertExecution<T> {
+        
+        T execute(JdbcCoordinator jdbcCoordinator, PreparedStatement insert) throws SQLException;
+        
+    }
+    
+    private static UpsertResult readUpsertResult(ResultSet insertedFlags, int countRows) throws SQLException {
+        int insertedRows = 0;
+        int updatedRows = 0;
+        try (ResultSet rs = insertedFlags) {
+            while (rs.next()) {
+                if (rs.getBoolean(1)) {
+                    ++insertedRows;
+                } else {
+                    ++updatedRows;
+                }
+            }
+        }
+        if (insertedRows + updatedRows != countRows) {
+            checkRowCount(countRows, insertedRows + updatedRows);
+        }
+        return UpsertResult.of(insertedRows, updatedRows, 0);
+    }
+    
+    private void readGeneratedKeys(
+        AbstractSharedSessionContract sessionImpl,
+        PreparedStatement insert,
+        Serializable[] ids,
+        int offset,
+        int countRows) throws SQLException {
+        
+        Dialect dialect = sessionImpl.getJdbcServices().getDialect();
+        String keyColumnName = persister.getRootTableKeyColumnNames()[0];
+        try (ResultSet generatedKeys = insert.getGeneratedKeys()) {
+            // the keys are returned in the order of the value lines
+            for (int i = offset; i < offset + countRows; ++i) {
+                if (!generatedKeys.next()) {
+                    throw new HibernateException("The database returned " + (i - offset)
+                        + " natively generated identity values instead of " + countRows);
+                }
+                ids[i] = IdentifierGeneratorHelper.get(generatedKeys, keyColumnName, persister.getIdentifierType(),
+                    dialect);
+            }
+        }
+    }
+    
+    static void checkRowCount(int expected, int rowCount) {
+        if (expected > rowCount) {
+            throw new StaleStateException("Unexpected row count: " + rowCount + "; expected: " + expected);
+        }
+        if (expected < rowCount) {
+            String msg = "Unexpected row count: " + rowCount + "; expected: " + expected;
+            throw new TooManyRowsAffectedException(msg, expected, rowCount);
+        }
+    }
+    
+    // the statements inserting the included properties of the entity
     @Value
-    private static class EntityPersisterSpy {
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    static class InsertShape {
+        
+        static InsertShape create(
+            EntityPersister persister,
+            EntityPersisterSpy persisterSpy,
+            boolean identityInsert,
+            boolean[] includeProperty,
+            boolean dynamicInsert) {
+            int tableSpan = persisterSpy.tableSpan;
+            // one statement for each table in the order Hibernate inserts them: the joined superclass tables first,
+            // the secondary tables last
+            MultiLineSqlInsert[] sqlInserts = new MultiLineSqlInsert[tableSpan];
+            int[] parameterCountsPerRow = new int[tableSpan];
+            int[][] placeholderProperties = new int[tableSpan][];
+            boolean plainPlaceholders = true;
+            for (int j = 0; j < tableSpan; ++j) {
+                if (persisterSpy.inverseTable[j]) {
+                    // never written by inserts of this entity
+                    continue;
+                }
+                String sql;
+                if (dynamicInsert) {
+                    sql = persisterSpy.generateInsertString(identityInsert && j == 0, includeProperty, j);
+                } else {
+                    sql = identityInsert && j == 0
+                        ? persisterSpy.sqlIdentityInsertString
+                        : persisterSpy.sqlInsertStrings[j];
+                }
+                sqlInserts[j] = MultiLineSqlInsert.tryParse(sql);
+                if (sqlInserts[j] == null) {
+                    return null;
+                }
+                placeholderProperties[j] =
+                    findPlaceholderProperties(persister, persisterSpy, identityInsert && j == 0, includeProperty, j);
+                parameterCountsPerRow[j] = placeholderProperties[j].length;
+                plainPlaceholders &= sqlInserts[j].getPlainPlaceholderCount() == parameterCountsPerRow[j];
+            }
+            return new InsertShape(
+                includeProperty, sqlInserts, parameterCountsPerRow, plainPlaceholders ? placeholderProperties : null,
+                false);
+        }
+        
+        // the property index bound to each placeholder of the table in the order of dehydrate, -1 for the id
+        private static int[] findPlaceholderProperties(
+            EntityPersister persister,
+            EntityPersisterSpy persisterSpy,
+            boolean identityInsert,
+            boolean[] includeProperty,
+            int table) {
+            List<Integer> placeholderProperties = new ArrayList<>();
+            addPlaceholderProperties(placeholderProperties, persisterSpy, includeProperty, table, false);
+            if (!identityInsert) {
+                int idColumnSpan = persister.getIdentifierType().getColumnSpan(persister.getFactory());
+                placeholderProperties.addAll(Collections.nCopies(idColumnSpan, -1));
+            }
+            addPlaceholderProperties(placeholderProperties, persisterSpy, includeProperty, table, true);
+            return Ints.toArray(placeholderProperties);
+        }
+        
+        private static void addPlaceholderProperties(
+            List<Integer> placeholderProperties,
+            EntityPersisterSpy persisterSpy,
+            boolean[] includeProperty,
+            int table,
+            boolean lob) {
+            boolean[] propertyOfTable = persisterSpy.propertyOfTable[table];
+            for (int i = 0; i < includeProperty.length; ++i) {
+                if (includeProperty[i] && propertyOfTable[i] && persisterSpy.lobProperty[i] == lob) {
+                    int columnCount = ArrayHelper.countTrue(persisterSpy.propertyColumnInsertable[i]);
+                    placeholderProperties.addAll(Collections.nCopies(columnCount, i));
+                }
+            }
+        }
+        
+        // the placeholders of the null properties, which are replaced by DEFAULT
+        BitSet getDefaultPlaceholders(int table, Object[] fields) {
+            int[] placeholderProperties = this.placeholderProperties[table];
+            BitSet defaultPlaceholders = new BitSet(placeholderProperties.length);
+            for (int k = 0; k < placeholderProperties.length; ++k) {
+                int property = placeholderProperties[k];
+                if (property >= 0 && fields[property] == null) {
+                    defaultPlaceholders.set(k);
+                }
+            }
+            return defaultPlaceholders;
+        }
+        
+        // the included properties actually bound by dehydrate
+        boolean[] getBoundProperties(Object[] fields) {
+            if (!nullsAsDefault) {
+                return includeProperty;
+            }
+            boolean[] boundProperties = new boolean[includeProperty.length];
+            for (int i = 0; i < includeProperty.length; ++i) {
+                boundProperties[i] = includeProperty[i] && fields[i] != null;
+            }
+            return boundProperties;
+        }
+        
+        boolean[] includeProperty;
+        // by table number, null for inverse tables
+        MultiLineSqlInsert[] sqlInserts;
+        int[] parameterCountsPerRow;
+        // by table number and placeholder, null if some placeholder cannot be replaced by DEFAULT
+        int[][] placeholderProperties;
+        
+        // the null properties are written as DEFAULT instead of binding them
+        @Wither
+        boolean nullsAsDefault;
+        
+    }
+    
+    @Value
+    static class EntityPersisterSpy {
         
         public static EntityPersisterSpy spyOn(EntityPersister persister) {
+            requireNonNull(persister);
+            int tableSpan = invokeMethod(persister, GET_TABLE_SPAN, Integer.class);
+            int propertySpan = persister.getEntityMetamodel().getPropertySpan();
+            boolean[][] propertyOfTable = new boolean[tableSpan][propertySpan];
+            boolean[] nullableTable = new boolean[tableSpan];
+            boolean[] inverseTable = new boolean[tableSpan];
+            boolean[] lobProperty = new boolean[propertySpan];
+            for (Object lobPropertyIndex : readField(persister, LOB_PROPERTIES, List.class)) {
+                lobProperty[(Integer) lobPropertyIndex] = true;
+            }
+            for (int j = 0; j < tableSpan; ++j) {
+                for (int i = 0; i < propertySpan; ++i) {
+                    propertyOfTable[j][i] = invokeMethod(persister, IS_PROPERTY_OF_TABLE, Boolean.class, i, j);
+                }
+                nullableTable[j] = invokeMethod(persister, IS_NULLABLE_TABLE, Boolean.class, j);
+                inverseTable[j] = invokeMethod(persister, IS_INVERSE_TABLE, Boolean.class, j);
+            }
             return new EntityPersisterSpy(
-                requireNonNull(persister),
-                readField(persister, SQL_INSERT_STRINGS, String[].class)[0],
-                readField(persister, INSERT_CALLABLE, boolean[].class)[0],
-                readField(persister, INSERT_RESULT_CHECK_STYLES, ExecuteUpdateResultCheckStyle[].class)[0],
-                readField(persister, PROPERTY_COLUMN_INSERTABLE, boolean[][].class)
+                (AbstractEntityPersister) persister,
+                tableSpan,
+                readField(persister, SQL_INSERT_STRINGS, String[].class),
+                readField(persister, SQL_IDENTITY_INSERT_STRING, String.class),
+                readField(persister, INSERT_CALLABLE, boolean[].class),
+                readField(persister, INSERT_RESULT_CHECK_STYLES, ExecuteUpdateResultCheckStyle[].class),
+                readField(persister, PROPERTY_COLUMN_INSERTABLE, boolean[][].class),
+                propertyOfTable,
+                nullableTable,
+                inverseTable,
+                lobProperty,
+                readField(persister, PROPERTY_COLUMN_UPDATEABLE, boolean[][].class),
+                readField(persister, UPDATE_CALLABLE, boolean[].class),
+                readField(persister, CUSTOM_SQL_UPDATE, String[].class),
+                readField(persister, DELETE_CALLABLE, boolean[].class),
+                readField(persister, CUSTOM_SQL_DELETE, String[].class)
             );
         }
         
-        EntityPersister persister;
-        String sqlInsertString;
-        boolean insertCallable;
-        ExecuteUpdateResultCheckStyle insertResultCheckStyle;
+        AbstractEntityPersister persister;
+        int tableSpan;
+        String[] sqlInsertStrings;
+        String sqlIdentityInsertString;
+        boolean[] insertCallable;
+        ExecuteUpdateResultCheckStyle[] insertResultCheckStyles;
         boolean[][] propertyColumnInsertable;
+        // by table number and property index
+        boolean[][] propertyOfTable;
+        boolean[] nullableTable;
+        boolean[] inverseTable;
+        // lob properties are bound after the id
+        boolean[] lobProperty;
+        boolean[][] propertyColumnUpdateable;
+        boolean[] updateCallable;
+        // by table number, null elements for the generated update strings
+        String[] customSqlUpdateStrings;
+        boolean[] deleteCallable;
+        // by table number, null elements for the generated delete strings
+        String[] customSqlDeleteStrings;
+        
+        // the columns in the order of the parameters bound by dehydrate for an insert
+        public String[] getDehydratedColumnNames(boolean[] includeProperty, int table, boolean includeId) {
+            List<String> columnNames = new ArrayList<>();
+            addDehydratedColumnNames(columnNames, includeProperty, propertyColumnInsertable, table, false);
+            if (includeId) {
+                columnNames.addAll(Arrays.asList(getKeyColumnNames(table)));
+            }
+            addDehydratedColumnNames(columnNames, includeProperty, propertyColumnInsertable, table, true);
+            return columnNames.toArray(new String[columnNames.size()]);
+        }
+        
+        // the columns in the order of the parameters bound by dehydrateForUpdate
+        public String[] getDehydratedUpdateColumnNames(boolean[] includeProperty, int table) {
+            List<String> columnNames = new ArrayList<>();
+            addDehydratedColumnNames(columnNames, includeProperty, propertyColumnUpdateable, table, false);
+            addDehydratedColumnNames(columnNames, includeProperty, propertyColumnUpdateable, table, true);
+            return columnNames.toArray(new String[columnNames.size()]);
+        }
+        
+        // the inserted columns overwritten by an upsert, the ones Hibernate would not update are kept
+        public String[] getUpsertUpdateColumnNames(boolean[] includeProperty, int table) {
+            boolean[] propertyUpdateability = persister.getPropertyUpdateability();
+            List<String> columnNames = new ArrayList<>();
+            for (int i = 0; i < includeProperty.length; ++i) {
+                if (includeProperty[i] && propertyUpdateability[i] && propertyOfTable[table][i]) {
+                    String[] propertyColumnNames = persister.getPropertyColumnNames(i);
+                    for (int k = 0; k < propertyColumnNames.length; ++k) {
+                        if (propertyColumnInsertable[i][k] && propertyColumnUpdateable[i][k]) {
+                            columnNames.add(propertyColumnNames[k]);
+                        }
+                    }
+                }
+            }
+            return columnNames.toArray(new String[columnNames.size()]);
+        }
+        
+        private void addDehydratedColumnNames(
+            List<String> columnNames,
+            boolean[] includeProperty,
+            boolean[][] includeColumns,
+            int table,
+            boolean lob) {
+            for (int i = 0; i < includeProperty.length; ++i) {
+                if (includeProperty[i] && propertyOfTable[table][i] && lobProperty[i] == lob) {
+                    String[] propertyColumnNames = persister.getPropertyColumnNames(i);
+                    for (int k = 0; k < propertyColumnNames.length; ++k) {
+                        if (includeColumns[i][k]) {
+                            columnNames.add(propertyColumnNames[k]);
+                        }
+                    }
+                }
+            }
+        }
+        
+        public String getTableName(int table) {
+            return invokeMethod(persister, GET_TABLE_NAME, String.class, table);
+        }
+        
+        public String[] getKeyColumnNames(int table) {
+            return invokeMethod(persister, GET_KEY_COLUMNS, String[].class, table);
+        }
+        
+        // the insert sql of the table with only the included properties, like for a dynamic insert
+        public String generateInsertString(boolean identityInsert, boolean[] includeProperty, int table) {
+            return invokeMethod(
+                persister, GENERATE_INSERT_STRING, String.class, identityInsert, includeProperty, table);
+        }
+        
+        // same as the private AbstractEntityPersister.isAllNull
+        public boolean isAllNull(Object[] fields, int table) {
+            boolean[] propertyOfTable = this.propertyOfTable[table];
+            for (int i = 0; i < fields.length; ++i) {
+                if (propertyOfTable[i] && fields[i] != null) {
+                    return false;
+                }
+            }
+            return true;
+        }
         
         public int dehydrate(
             SharedSessionContractImplementor sessionImpl,
             Serializable id,
             Object[] fields,
             boolean[] includeProperty,
+            int table,
             PreparedStatement ps,
             int index) throws SQLException, HibernateException {
-            Object rowId = null;
-            int tableSpan = 0;
             boolean isUpdate = false;
-            try {
-                Object returnValue = DEHYDRATE.invoke(persister, id, fields, rowId, includeProperty,
-                    propertyColumnInsertable, tableSpan, ps, sessionImpl, index, isUpdate);
-                return (Integer) returnValue;
-            } catch (Exception e) {
-                throw Throwables.propagate(e);
-            }
+            return dehydrate(
+                sessionImpl, id, fields, includeProperty, propertyColumnInsertable, table, ps, index, isUpdate);
         }
         
-        static Class<?> CLASS = AbstractEntityPersister.class;
-        
-        static Method DEHYDRATE = lookupDehydrateMethod();
+        // binds the updateable columns of the included properties without the id
+        public int dehydrateForUpdate(
+            SharedSessionContractImplementor sessionImpl,
+            Object[] fields,
+            boolean[] includeProperty,
+            int table,
+            PreparedStatement ps,
+            int index) throws SQLException, HibernateException {
+            boolean isUpdate = true;
+            return dehydrate(
+                sessionImpl, null, fields, includeProperty, propertyColumnUpdateable, table, ps, index, isUpdate);
+        }
         
-        private static Method lookupDehydrateMethod() {
+        private int dehydrate(
+            SharedSessionContractImplementor sessionImpl,
+            Serializable id,
+            Object[] fields,
+            boolean[] includeProperty,
+            boolean[][] includeColumns,
+            int table,
+            PreparedStatement ps,
+            int index,
+            boolean isUpdate) throws SQLException, HibernateException {
             try {
-                Method method = CLASS.getDeclaredMethod("dehydrate",
-                    Serializable.class, // id
-                    Object[].class, // fields
-                    Object.class, // rowId = null
-                    boolean[].class, // includeProperty
-                    boolean[][].class, // includeColumns
-                    int.class, // j alias: tableSpan = 0
-                    PreparedStatement.class,
-                    SharedSessionContractImplementor.class,
-                    int.class, // index
-                    boolean.class // isUpdate = false
+                // invokeExact on a static final handle gets inlined by the JIT: no boxing, no varargs array
+                return (int) DEHYDRATE.invokeExact(
+                    persister,
+                    id,
+                    fields,
+                    (Object) null, // rowId
+                    includeProperty,
+                    includeColumns,
+                    table, // j
+                    ps,
+                    sessionImpl,
+                    index,
+                    isUpdate
                 );
-                method.setAccessible(true);
-                return method;
-            } catch (NoSuchMethodException e) {
-                throw Throwables.propagate(e);
+            } catch (SQLException | RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new UndeclaredThrowableException(e);
             }
         }
         
-        static Field lookupField(String name) {
-            try {
-                Field field = CLASS.getDeclaredField(name);
-                field.setAccessible(true);
-                return field;
-            } catch (Exception e) {
-                throw Throwables.propagate(e);
-            }
-        }
+        static Class<?> CLASS = AbstractEntityPersister.class;
         
-        static <T> T readField(Object object, Field field, Class<T> returnType) {
-            try {
-                Object value = field.get(object);
-                return returnType.cast(value);
-            } catch (Exception e) {
-                throw Throwables.propagate(e);
-            }
+        static final MethodHandle DEHYDRATE = lookupDehydrateMethod();
+        
+        private static MethodHandle lookupDehydrateMethod() {
+            return lookupMethodHandle(CLASS, "dehydrate",
+                Serializable.class, // id
+                Object[].class, // fields
+                Object.class, // rowId = null
+                boolean[].class, // includeProperty
+                boolean[][].class, // includeColumns
+                int.class, // j: table number
+                PreparedStatement.class,
+                SharedSessionContractImplementor.class,
+                int.class, // index
+                boolean.class // isUpdate
+            );
         }
         
-        static Field INSERT_CALLABLE = lookupField("insertCallable");
-        static Field INSERT_RESULT_CHECK_STYLES = lookupField("insertResultCheckStyles");
-        static Field PROPERTY_COLUMN_INSERTABLE = lookupField("propertyColumnInsertable");
-        static Field SQL_INSERT_STRINGS = lookupField("sqlInsertStrings");
+        static Field INSERT_CALLABLE = lookupField(CLASS, "insertCallable");
+        static Field INSERT_RESULT_CHECK_STYLES = lookupField(CLASS, "insertResultCheckStyles");
+        static Field PROPERTY_COLUMN_INSERTABLE = lookupField(CLASS, "propertyColumnInsertable");
+        static Field SQL_INSERT_STRINGS = lookupField(CLASS, "sqlInsertStrings");
+        static Field SQL_IDENTITY_INSERT_STRING = lookupField(CLASS, "sqlIdentityInsertString");
+        static Field LOB_PROPERTIES = lookupField(CLASS, "lobProperties");
+        static Field PROPERTY_COLUMN_UPDATEABLE = lookupField(CLASS, "propertyColumnUpdateable");
+        static Field UPDATE_CALLABLE = lookupField(CLASS, "updateCallable");
+        static Field CUSTOM_SQL_UPDATE = lookupField(CLASS, "customSQLUpdate");
+        static Field DELETE_CALLABLE = lookupField(CLASS, "deleteCallable");
+        static Field CUSTOM_SQL_DELETE = lookupField(CLASS, "customSQLDelete");
+        
+        static Method GET_TABLE_SPAN = lookupMethod(CLASS, "getTableSpan");
+        static Method IS_PROPERTY_OF_TABLE = lookupMethod(CLASS, "isPropertyOfTable", int.class, int.class);
+        static Method IS_NULLABLE_TABLE = lookupMethod(CLASS, "isNullableTable", int.class);
+        static Method IS_INVERSE_TABLE = lookupMethod(CLASS, "isInverseTable", int.class);
+        static Method GET_KEY_COLUMNS = lookupMethod(CLASS, "getKeyColumns", int.class);
+        static Method GET_TABLE_NAME = lookupMethod(CLASS, "getTableName", int.class);
+        static Method GENERATE_INSERT_STRING =
+            lookupMethod(CLASS, "generateInsertString", boolean.class, boolean[].class, int.class);
         
     }
     
+    static final long MAX_CACHED_DYNAMIC_INSERT_SHAPES = 256;
+    
     private static final ImmutableSet<Class<? extends IdentifierGenerator>> SUPPORTED_ID_GENERATORS = ImmutableSet.of(
         Assigned.class, GUIDGenerator.class, UUIDGenerator.class, UUIDHexGenerator.class
     );
     
+    // their drivers return a generated key for each value line, H2 only since 1.4.197: the earlier versions return the
+    // key of the last line, which readGeneratedKeys reports as an error after the insert
+    private static final ImmutableSet<Class<? extends Dialect>> MULTI_LINE_GENERATED_KEYS_DIALECTS = ImmutableSet.of(
+        H2Dialect.class, MySQLDialect.class, PostgreSQL81Dialect.class
+    );
+    
+    private static final ImmutableSet<Class<? extends Dialect>> DEFAULT_KEYWORD_DIALECTS = ImmutableSet.of(
+        H2Dialect.class, MySQLDialect.class, PostgreSQL81Dialect.class
+    );
+    
+    private static final ImmutableSet<Class<? extends Optimizer>> POOLED_OPTIMIZERS = ImmutableSet.of(
+        PooledOptimizer.class, PooledLoOptimizer.class, PooledLoThreadLocalOptimizer.class
+    );
+    
 }
@@ -0,0 +1,349 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.HibernateMultiLineInsert.EntityPersisterSpy;
+import com.doctusoft.hibernate.extras.ParameterRecorder.RecordedParameters;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.Value;
+import lombok.experimental.Wither;
+import org.hibernate.HibernateException;
+import org.hibernate.JDBCException;
+import org.hibernate.Session;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.TransientObjectException;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.OptimisticLockStyle;
+import org.hibernate.engine.internal.Versioning;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.Status;
+import org.hibernate.internal.AbstractSharedSessionContract;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.pretty.MessageHelper;
+import org.hibernate.type.Type;
+import org.hibernate.type.TypeHelper;
+import org.hibernate.type.VersionType;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static java.util.Objects.*;
+
+// updates all the updateable columns of many entities of a single table in one statement per chunk:
+// update t set c = case when id = ? then ? when id = ? then ? else c end, ... where id in (?, ?)
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@EqualsAndHashCode(exclude = "sqlUpdates")
+@ToString(exclude = "sqlUpdates")
+public class HibernateMultiLineUpdate {
+    
+    public static HibernateMultiLineUpdate lookup(EntityPersister persister) {
+        requireNonNull(persister, "persister");
+        if (!(persister instanceof AbstractEntityPersister)) {
+            // custom persisters may write the entities any way
+            return null;
+        }
+        if (!persister.isMutable()) {
+            // Hibernate never updates the rows of immutable entities
+            return null;
+        }
+        if (persister.hasCache()
+            || persister.hasUpdateGeneratedProperties()
+            || persister.isVersionPropertyGenerated()
+            || persister.getEntityMetamodel().hasLazyProperties()) {
+            // these would need the per-entity processing of EntityUpdateAction, or the unfetched values would be
+            // written
+            return null;
+        }
+        OptimisticLockStyle optimisticLockStyle = persister.getEntityMetamodel().getOptimisticLockStyle();
+        if (optimisticLockStyle != OptimisticLockStyle.VERSION && optimisticLockStyle != OptimisticLockStyle.NONE) {
+            // the dirty and all styles compare the loaded state of the properties
+            return null;
+        }
+        EntityPersisterSpy persisterSpy = EntityPersisterSpy.spyOn(persister);
+        if (persisterSpy.getTableSpan() != 1
+            || persisterSpy.getUpdateCallable()[0]
+            || persisterSpy.getCustomSqlUpdateStrings()[0] != null) {
+            // the single statement can only update one table the way Hibernate would
+            return null;
+        }
+        boolean[] propertyUpdateability = persister.getPropertyUpdateability();
+        boolean[][] propertyColumnUpdateable = persisterSpy.getPropertyColumnUpdateable();
+        for (int i = 0; i < propertyUpdateability.length; ++i) {
+            String[] propertyColumnWriters = ((AbstractEntityPersister) persister).getPropertyColumnWriters(i);
+            for (int k = 0; k < propertyColumnWriters.length; ++k) {
+                boolean updated = propertyUpdateability[i] && propertyColumnUpdateable[i][k];
+                if (updated && !"?".equals(propertyColumnWriters[k])) {
+                    // the values are bound inside case expressions, there is no place for a column write expression
+                    return null;
+                }
+            }
+        }
+        String[] columnNames = persisterSpy.getDehydratedUpdateColumnNames(propertyUpdateability, 0);
+        if (columnNames.length == 0) {
+            // nothing to update
+            return null;
+        }
+        // the versions are incremented with any lock style, but only the version style checks them
+        boolean versionChecked = persister.isVersioned() && optimisticLockStyle == OptimisticLockStyle.VERSION;
+        String[] keyColumnNames = persisterSpy.getKeyColumnNames(0);
+        Dialect dialect = persister.getFactory().getJdbcServices().getDialect();
+        boolean inList = !versionChecked && keyColumnNames.length == 1;
+        return new HibernateMultiLineUpdate(
+            (AbstractEntityPersister) persister,
+            persisterSpy,
+            ((AbstractEntityPersister) persister).getTableName(),
+            columnNames,
+            keyColumnNames,
+            versionChecked ? ((AbstractEntityPersister) persister).getVersionColumnName() : null,
+            inList ? BindParameterLimits.maxInListElements(dialect) : Integer.MAX_VALUE,
+            ChunkSizes.fixed(DEFAULT_MAX_CHUNK_SIZE),
+            BindParameterLimits.forDialect(dialect));
+    }
+    
+    AbstractEntityPersister persister;
+    EntityPersisterSpy persisterSpy;
+    String tableName;
+    // in the order of the parameters bound by dehydrate for an update
+    String[] columnNames;
+    String[] keyColumnNames;
+    // null if the rows are not checked for concurrent modifications
+    String versionColumnName;
+    // the rows are listed in the where clause as id in (?, ?) for unversioned single column keys
+    int maxInListRows;
+    
+    // every case expression has a branch for each row of the chunk, so the database evaluates them in O(rows^2)
+    @Wither
+    @NonNull
+    ChunkSizes chunkSizes;
+    
+    @Wither
+    int maxBindParameters;
+    
+    @Getter(AccessLevel.NONE)
+    LoadingCache<Integer, String> sqlUpdates = CacheBuilder.newBuilder()
+        .maximumWeight(MAX_CACHED_SQL_LENGTH)
+        .weigher((Integer countRows, String sql) -> sql.length())
+        .build(CacheLoader.from(this::createSqlUpdate));
+    
+    // writes the current state of managed or detached entities, and increments their versions like a flush would
+    public void updateInBatch(Session session, Object[] entities) {
+        
+        int countEntities = entities.length;
+        if (countEntities == 0) return;
+        
+        AbstractSharedSessionContract sessionImpl = (AbstractSharedSessionContract) session;
+        PersistenceContext persistenceContext = sessionImpl.getPersistenceContext();
+        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        // the single row update serves the calls other than the parameter setters
+        ParameterRecorder recorder = ParameterRecorder.create(
+            () -> jdbcCoordinator.getStatementPreparer().prepareStatement(sqlUpdates.getUnchecked(1), false));
+        boolean[] propertyUpdateability = persister.getPropertyUpdateability();
+        EntityEntry[] entries = new EntityEntry[countEntities];
+        Serializable[] ids = new Serializable[countEntities];
+        Object[][] fields = new Object[countEntities][];
+        Object[] versions = new Object[countEntities];
+        Object[] nextVersions = new Object[countEntities];
+        RecordedParameters[] rows = new RecordedParameters[countEntities];
+        try {
+            for (int i = 0; i < countEntities; ++i) {
+                Object entity = entities[i];
+                entries[i] = persistenceContext.getEntry(entity);
+                if (entries[i] != null && entries[i].getStatus() != Status.MANAGED) {
+                    throw new HibernateException("Only managed or detached entities can be updated: "
+                        + MessageHelper.infoString(persister, entries[i].getId(), persister.getFactory()));
+                }
+                ids[i] = entries[i] != null ? entries[i].getId() : persister.getIdentifier(entity, sessionImpl);
+                if (ids[i] == null) {
+                    throw new TransientObjectException("The entity to update has no id: " + persister.getEntityName());
+                }
+                fields[i] = persister.getPropertyValues(entity);
+                if (persister.isVersioned()) {
+                    // the version of a detached entity is the one it was loaded with
+                    versions[i] = entries[i] != null
+                        ? entries[i].getVersion()
+                        : Versioning.getVersion(fields[i], persister);
+                    nextVersions[i] = Versioning.increment(versions[i], persister.getVersionType(), sessionImpl);
+                    Versioning.setVersion(fields[i], nextVersions[i], persister);
+                }
+                persisterSpy.dehydrateForUpdate(
+                    sessionImpl, fields[i], propertyUpdateability, 0, recorder.getStatement(), 1);
+                rows[i] = recorder.takeParameters();
+            }
+        } catch (SQLException e) {
+            // only raised by the type descriptors, the recorder itself never throws it
+            throw convert(sessionImpl, e, sqlUpdates.getUnchecked(1));
+        } finally {
+            recorder.releaseDelegate(statement -> {
+                jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+                jdbcCoordinator.afterStatementExecution();
+            });
+        }
+        
+        int maxRowsPerStatement = Math.min(
+            BindParameterLimits.maxRowsPerStatement(maxBindParameters, countParametersPerRow()),
+            maxInListRows);
+        for (int offset = 0; offset < countEntities; ) {
+            int countRows = chunkSizes.nextChunkSize(Math.min(countEntities - offset, maxRowsPerStatement));
+            int rowCount = updateRows(sessionImpl, ids, versions, rows, offset, countRows);
+            if (versionColumnName != null && rowCount < countRows) {
+                // a missing row is either deleted or updated concurrently, but a concurrent update to the same next
+                // version can not be told apart from ours, then only the row count fails like a Hibernate batch
+                Serializable staleId = findStaleId(sessionImpl, ids, nextVersions, offset, countRows);
+                if (staleId != null) {
+                    throw new StaleObjectStateException(persister.getEntityName(), staleId);
+                }
+            }
+            HibernateMultiLineInsert.checkRowCount(countRows, rowCount);
+            offset += countRows;
+        }
+        
+        Type[] propertyTypes = persister.getPropertyTypes();
+        for (int i = 0; i < countEntities; ++i) {
+            if (entries[i] != null) {
+                // the new snapshot for dirty checking, it also sets the version of the entity
+                TypeHelper.deepCopy(fields[i], propertyTypes, propertyUpdateability, fields[i], sessionImpl);
+                entries[i].postUpdate(entities[i], fields[i], nextVersions[i]);
+            } else if (persister.isVersioned()) {
+                persister.setPropertyValue(entities[i], persister.getVersionProperty(), nextVersions[i]);
+            }
+        }
+    }
+    
+    // returns the update count
+    private int updateRows(
+        AbstractSharedSessionContract sessionImpl,
+        Serializable[] ids,
+        Object[] versions,
+        RecordedParameters[] rows,
+        int offset,
+        int countRows) {
+        
+        String sql = sqlUpdates.getUnchecked(countRows);
+        JdbcCoordinator jdbcCoordinator = sessionImpl.getJdbcCoordinator();
+        Type identifierType = persister.getIdentifierType();
+        int keyColumnSpan = keyColumnNames.length;
+        try {
+            boolean callable = false;
+            PreparedStatement update = jdbcCoordinator
+                .getStatementPreparer()
+                .prepareStatement(sql, callable);
+            try {
+                int idx = 1;
+                for (int c = 1; c <= columnNames.length; ++c) {
+                    for (int i = offset; i < offset + countRows; ++i) {
+                        identifierType.nullSafeSet(update, ids[i], idx, sessionImpl);
+                        idx += keyColumnSpan;
+                        rows[i].bind(update, c, idx++);
+                    }
+                }
+                for (int i = offset; i < offset + countRows; ++i) {
+                    identifierType.nullSafeSet(update, ids[i], idx, sessionImpl);
+                    idx += keyColumnSpan;
+                    if (versionColumnName != null) {
+                        persister.getVersionType().nullSafeSet(update, versions[i], idx++, sessionImpl);
+                    }
+                }
+                return jdbcCoordinator
+                    .getResultSetReturn()
+                    .executeUpdate(update);
+            } finally {
+                jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(update);
+                jdbcCoordinator.afterStatementExecution();
+            }
+        } catch (SQLException e) {
+            throw convert(sessionImpl, e, sql);
+        }
+    }
+    
+    private JDBCException convert(AbstractSharedSessionContract sessionImpl, SQLException e, String sql) {
+        return sessionImpl.getFactory()
+            .getServiceRegistry()
+            .getService(JdbcServices.class)
+            .getSqlExceptionHelper()
+            .convert(e, "could not update: " + MessageHelper.infoString(persister), sql);
+    }
+    
+    // the first row of the chunk without the version written by the update, null if there is none
+    private Serializable findStaleId(
+        AbstractSharedSessionContract sessionImpl,
+        Serializable[] ids,
+        Object[] nextVersions,
+        int offset,
+        int countRows) {
+        
+        VersionType<?> versionType = persister.getVersionType();
+        for (int i = offset; i < offset + countRows; ++i) {
+            Object currentVersion = persister.getCurrentVersion(ids[i], sessionImpl);
+            if (currentVersion == null || !versionType.isEqual(currentVersion, nextVersions[i])) {
+                return ids[i];
+            }
+        }
+        return null;
+    }
+    
+    private int countParametersPerRow() {
+        int keyColumnSpan = keyColumnNames.length;
+        return columnNames.length * (keyColumnSpan + 1) + keyColumnSpan + (versionColumnName != null ? 1 : 0);
+    }
+    
+    private String createSqlUpdate(int countRows) {
+        String keyCondition = keyCondition();
+        StringBuilder builder = new StringBuilder("update ").append(tableName).append(" set ");
+        for (int c = 0; c < columnNames.length; ++c) {
+            if (c > 0) {
+                builder.append(", ");
+            }
+            builder.append(columnNames[c]).append(" = case");
+            for (int i = 0; i < countRows; ++i) {
+                builder.append(" when ").append(keyCondition).append(" then ?");
+            }
+            // the column in the else branch gives the case expression the type of the column, otherwise it would be
+            // inferred from the parameters, e.G. as text on PostgreSQL for the ones bound without an explicit type
+            builder.append(" else ").append(columnNames[c]).append(" end");
+        }
+        builder.append(" where ");
+        if (versionColumnName == null && keyColumnNames.length == 1) {
+            builder.append(keyColumnNames[0]).append(" in (");
+            for (int i = 0; i < countRows; ++i) {
+                builder.append(i > 0 ? ", ?" : "?");
+            }
+            builder.append(')');
+        } else {
+            String rowCondition = versionColumnName == null
+                ? keyCondition
+                : keyCondition + " and " + versionColumnName + " = ?";
+            for (int i = 0; i < countRows; ++i) {
+                builder.append(i > 0 ? " or (" : "(").append(rowCondition).append(')');
+            }
+        }
+        return builder.toString();
+    }
+    
+    private String keyCondition() {
+        StringBuilder builder = new StringBuilder();
+        for (String keyColumnName : keyColumnNames) {
+            if (builder.length() > 0) {
+                builder.append(" and ");
+            }
+            builder.append(keyColumnName).append(" = ?");
+        }
+        return builder.toString();
+    }
+    
+    static final int DEFAULT_MAX_CHUNK_SIZE = 200;
+    
+    static final long MAX_CACHED_SQL_LENGTH = 1 << 20;
+    
+}
@@ -0,0 +1,296 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.ParameterRecorder.RecordedParameters;
+import org.hibernate.engine.jdbc.batch.spi.Batch;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.engine.jdbc.batch.spi.BatchObserver;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+import org.hibernate.engine.jdbc.spi.SqlExceptionHelper;
+import org.hibernate.jdbc.Expectation;
+import org.hibernate.jdbc.Expectations;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Function;
+
+import static java.util.Objects.*;
+
+// collects the rows added for the same insert sql and sends them as multi-line inserts, the other statements of the
+// batch are executed as an ordinary JDBC batch
+class MultiLineBatch implements Batch {
+    
+    private final BatchKey key;
+    private final JdbcCoordinator jdbcCoordinator;
+    private final int batchSize;
+    private final int maxBindParameters;
+    private final Function<String, MultiLineSqlInsert> sqlInsertParser;
+    
+    private final LinkedHashSet<BatchObserver> observers = new LinkedHashSet<>();
+    // in the order of their first use, so that e.G. the rows of a parent table are inserted first
+    private final LinkedHashMap<String, PendingStatement> statements = new LinkedHashMap<>();
+    private PendingStatement currentStatement;
+    private int statementPosition;
+    private int batchPosition;
+    private boolean preparing;
+    
+    MultiLineBatch(
+        BatchKey key,
+        JdbcCoordinator jdbcCoordinator,
+        int batchSize,
+        int maxBindParameters,
+        Function<String, MultiLineSqlInsert> sqlInsertParser) {
+        this.key = requireNonNull(key, "key");
+        this.jdbcCoordinator = requireNonNull(jdbcCoordinator, "jdbcCoordinator");
+        this.batchSize = batchSize;
+        this.maxBindParameters = maxBindParameters;
+        this.sqlInsertParser = requireNonNull(sqlInsertParser, "sqlInsertParser");
+    }
+    
+    @Override
+    public BatchKey getKey() {
+        return key;
+    }
+    
+    @Override
+    public void addObserver(BatchObserver observer) {
+        observers.add(observer);
+    }
+    
+    @Override
+    public PreparedStatement getBatchStatement(String sql, boolean callable) {
+        PendingStatement statement = statements.get(sql);
+        if (statement == null) {
+            MultiLineSqlInsert sqlInsert = callable ? null : sqlInsertParser.apply(sql);
+            statement = sqlInsert != null ? new RecordedInsert(sqlInsert) : new JdbcBatchedStatement(sql, callable);
+            statements.put(sql, statement);
+        }
+        currentStatement = statement;
+        return statement.getStatement();
+    }
+    
+    @Override
+    public void addToBatch() {
+        try {
+            currentStatement.addToBatch();
+        } catch (SQLException e) {
+            throw sqlExceptionHelper().convert(e, "could not perform addBatch", currentStatement.getSql());
+        }
+        // every batched entity adds one row for each statement of the key (e.G. one for each table)
+        if (++statementPosition < key.getBatchedStatementCount()) {
+            return;
+        }
+        statementPosition = 0;
+        if (++batchPosition == batchSize) {
+            observers.forEach(BatchObserver::batchImplicitlyExecuted);
+            performExecution();
+        }
+    }
+    
+    @Override
+    public void execute() {
+        if (preparing) {
+            return;
+        }
+        observers.forEach(BatchObserver::batchExplicitlyExecuted);
+        if (statements.isEmpty()) {
+            return;
+        }
+        try {
+            if (batchPosition > 0) {
+                performExecution();
+            }
+        } finally {
+            releaseStatements();
+        }
+    }
+    
+    @Override
+    public void release() {
+        if (preparing) {
+            return;
+        }
+        releaseStatements();
+        observers.clear();
+    }
+    
+    private void performExecution() {
+        PendingStatement executing = null;
+        try {
+            for (PendingStatement statement : statements.values()) {
+                executing = statement;
+                statement.execute();
+            }
+            batchPosition = 0;
+        } catch (SQLException e) {
+            releaseStatements();
+            throw sqlExceptionHelper().convert(e, "could not execute batch", executing.getSql());
+        } catch (RuntimeException e) {
+            releaseStatements();
+            throw e;
+        }
+    }
+    
+    private void releaseStatements() {
+        statements.values().forEach(PendingStatement::release);
+        statements.clear();
+        currentStatement = null;
+        statementPosition = 0;
+        batchPosition = 0;
+    }
+    
+    private PreparedStatement prepareStatement(String sql, boolean callable) {
+        // the statement preparer executes and releases the current batch first, which is this one
+        preparing = true;
+        try {
+            return jdbcCoordinator.getStatementPreparer().prepareStatement(sql, callable);
+        } finally {
+            preparing = false;
+        }
+    }
+    
+    private SqlExceptionHelper sqlExceptionHelper() {
+        return jdbcCoordinator
+            .getJdbcSessionOwner()
+            .getJdbcSessionContext()
+            .getServiceRegistry()
+            .getService(JdbcServices.class)
+            .getSqlExceptionHelper();
+    }
+    
+    private interface PendingStatement {
+        
+        String getSql();
+        
+        PreparedStatement getStatement();
+        
+        void addToBatch() throws SQLException;
+        
+        void execute() throws SQLException;
+        
+        void release();
+        
+    }
+    
+    private class RecordedInsert implements PendingStatement {
+        
+        private final MultiLineSqlInsert sqlInsert;
+        private final ParameterRecorder recorder;
+        private final List<RecordedParameters> rows = new ArrayList<>(batchSize);
+        
+        RecordedInsert(MultiLineSqlInsert sqlInsert) {
+            this.sqlInsert = sqlInsert;
+            // the single row insert serves the calls other than the parameter setters
+            this.recorder = ParameterRecorder.create(() -> prepareStatement(getSql(), false));
+        }
+        
+        @Override
+        public String getSql() {
+            return sqlInsert.getMultiLineInsertString(1);
+        }
+        
+        @Override
+        public PreparedStatement getStatement() {
+            return recorder.getStatement();
+        }
+        
+        @Override
+        public void addToBatch() {
+            rows.add(recorder.takeParameters());
+        }
+        
+        @Override
+        public void execute() throws SQLException {
+            if (rows.isEmpty()) {
+                return;
+            }
+            int maxRowsPerStatement =
+                BindParameterLimits.maxRowsPerStatement(maxBindParameters, rows.get(0).getParameterCount());
+            for (int offset = 0; offset < rows.size(); ) {
+                int countRows = Math.min(rows.size() - offset, maxRowsPerStatement);
+                String sql = sqlInsert.getMultiLineInsertString(countRows);
+                PreparedStatement insert = prepareStatement(sql, false);
+                try {
+                    int idx = 1;
+                    for (int i = offset; i < offset + countRows; ++i) {
+                        idx = rows.get(i).bindAll(insert, idx);
+                    }
+                    int rowCount = jdbcCoordinator.getResultSetReturn().executeUpdate(insert);
+                    if (key.getExpectation() != Expectations.NONE) {
+                        HibernateMultiLineInsert.checkRowCount(countRows, rowCount);
+                    }
+                } finally {
+                    jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(insert);
+                }
+                offset += countRows;
+            }
+            rows.clear();
+        }
+        
+        @Override
+        public void release() {
+            rows.clear();
+            recorder.releaseDelegate(jdbcCoordinator.getLogicalConnection().getResourceRegistry()::release);
+            jdbcCoordinator.afterStatementExecution();
+        }
+        
+    }
+    
+    private class JdbcBatchedStatement implements PendingStatement {
+        
+        private final String sql;
+        private final PreparedStatement statement;
+        private int countRows;
+        
+        JdbcBatchedStatement(String sql, boolean callable) {
+            this.sql = sql;
+            this.statement = prepareStatement(sql, callable);
+        }
+        
+        @Override
+        public String getSql() {
+            return sql;
+        }
+        
+        @Override
+        public PreparedStatement getStatement() {
+            return statement;
+        }
+        
+        @Override
+        public void addToBatch() throws SQLException {
+            statement.addBatch();
+            ++countRows;
+        }
+        
+        @Override
+        public void execute() throws SQLException {
+            if (countRows == 0) {
+                return;
+            }
+            int[] rowCounts = statement.executeBatch();
+            Expectation expectation = key.getExpectation();
+            for (int i = 0; i < rowCounts.length; ++i) {
+                expectation.verifyOutcome(rowCounts[i], statement, i);
+            }
+            countRows = 0;
+        }
+        
+        @Override
+        public void release() {
+            try {
+                statement.clearBatch();
+            } catch (SQLException e) {
+                // the statement is released anyway
+            }
+            jdbcCoordinator.getLogicalConnection().getResourceRegistry().release(statement);
+            jdbcCoordinator.afterStatementExecution();
+        }
+        
+    }
+    
+}
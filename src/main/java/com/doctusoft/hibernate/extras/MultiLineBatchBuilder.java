@@ -0,0 +1,63 @@
+package com.doctusoft.hibernate.extras;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.jdbc.batch.internal.BatchBuilderImpl;
+import org.hibernate.engine.jdbc.batch.spi.Batch;
+import org.hibernate.engine.jdbc.batch.spi.BatchKey;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.jdbc.spi.JdbcServices;
+
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+// opt-in with hibernate.jdbc.batch.builder=com.doctusoft.hibernate.extras.MultiLineBatchBuilder, the consecutive
+// batched inserts of a flush (see hibernate.order_inserts) are then sent as multi-line inserts
+public class MultiLineBatchBuilder extends BatchBuilderImpl {
+    
+    // the insert strings of the persisters, keyed by the sql Hibernate would batch
+    private final LoadingCache<String, Optional<MultiLineSqlInsert>> sqlInserts = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_SQL_INSERTS)
+        .build(CacheLoader.from(MultiLineBatchBuilder::parseSqlInsert));
+    
+    @Override
+    public Batch buildBatch(BatchKey key, JdbcCoordinator jdbcCoordinator) {
+        Integer sessionJdbcBatchSize = jdbcCoordinator.getJdbcSessionOwner().getJdbcBatchSize();
+        int batchSize = sessionJdbcBatchSize != null ? sessionJdbcBatchSize : getJdbcBatchSize();
+        if (batchSize <= 1) {
+            // nothing to collect, the statements are executed one by one
+            return super.buildBatch(key, jdbcCoordinator);
+        }
+        Dialect dialect = jdbcCoordinator
+            .getJdbcSessionOwner()
+            .getJdbcSessionContext()
+            .getServiceRegistry()
+            .getService(JdbcServices.class)
+            .getDialect();
+        return new MultiLineBatch(
+            key,
+            jdbcCoordinator,
+            batchSize,
+            BindParameterLimits.forDialect(dialect),
+            sql -> sqlInserts.getUnchecked(sql).orElse(null));
+    }
+    
+    private static Optional<MultiLineSqlInsert> parseSqlInsert(String sql) {
+        if (!INSERT.matcher(sql).lookingAt()) {
+            // updates and deletes are batched the ordinary way
+            return Optional.empty();
+        }
+        return Optional.ofNullable(MultiLineSqlInsert.tryParse(sql));
+    }
+    
+    private static final long serialVersionUID = 1L;
+    
+    static final long MAX_CACHED_SQL_INSERTS = 1024;
+    
+    // allows the comment prepended by hibernate.use_sql_comments
+    static Pattern INSERT = Pattern.compile(
+        "\\s*(/\\*.*?\\*/\\s*)?insert\\s", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    
+}
@@ -0,0 +1,241 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import org.hibernate.AssertionFailure;
+import org.hibernate.action.internal.AbstractEntityInsertAction;
+import org.hibernate.action.internal.EntityInsertAction;
+import org.hibernate.engine.spi.ActionQueue;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.ExecutableList;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostInsertEventListener;
+import org.hibernate.event.spi.PreInsertEvent;
+import org.hibernate.event.spi.PreInsertEventListener;
+import org.hibernate.internal.AbstractSharedSessionContract;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.stat.spi.StatisticsImplementor;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static com.doctusoft.hibernate.extras.Reflection.*;
+import static java.util.Objects.*;
+
+// executes the queued entity insertions of a flush, consecutive insertions of an eligible persister as multi-line
+// inserts and everything else one by one the Hibernate way
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+class MultiLineInsertActions {
+    
+    static MultiLineInsertActions create(
+        MultiLineInsertRegistry registry,
+        EventListenerRegistry eventListenerRegistry) {
+        return new MultiLineInsertActions(
+            requireNonNull(registry, "registry"),
+            requireNonNull(eventListenerRegistry, "eventListenerRegistry"));
+    }
+    
+    private final MultiLineInsertRegistry registry;
+    private final EventListenerRegistry eventListenerRegistry;
+    
+    // same as AbstractFlushingEventListener.performExecutions, but the insertions are executed first
+    void performExecutions(EventSource session) {
+        try {
+            session.getJdbcCoordinator().flushBeginning();
+            session.getPersistenceContext().setFlushing(true);
+            // we need to lock the collection caches before executing entity inserts/updates in order to
+            // account for bi-directional associations
+            session.getActionQueue().prepareActions();
+            executeInsertions(session);
+            session.getActionQueue().executeActions();
+        } finally {
+            session.getPersistenceContext().setFlushing(false);
+            session.getJdbcCoordinator().flushEnding();
+        }
+    }
+    
+    private void executeInsertions(EventSource session) {
+        ActionQueue actionQueue = session.getActionQueue();
+        @SuppressWarnings("unchecked")
+        ExecutableList<AbstractEntityInsertAction> insertions =
+            readField(actionQueue, INSERTIONS, ExecutableList.class);
+        if (insertions == null || insertions.size() < 2) {
+            return;
+        }
+        if (actionQueue.hasUnresolvedEntityInsertActions()) {
+            // ActionQueue.executeActions reports them
+            return;
+        }
+        ExecutableList<?> orphanRemovals = readField(actionQueue, ORPHAN_REMOVALS, ExecutableList.class);
+        if (orphanRemovals != null && !orphanRemovals.isEmpty()) {
+            // orphans must be removed before the insertions, e.g. in case of a replaced unique child
+            return;
+        }
+        if (session.getFactory().getSessionFactoryOptions().isQueryCacheEnabled()) {
+            // the query spaces to invalidate are only tracked for the actions executed by the ActionQueue
+            return;
+        }
+        int size = insertions.size();
+        for (int start = 0; start < size; ) {
+            AbstractEntityInsertAction first = insertions.get(start);
+            HibernateMultiLineInsert multiLineInsert = lookupEligible(first);
+            int end = start + 1;
+            if (multiLineInsert != null) {
+                while (end < size && isSameInsert(first, insertions.get(end))) {
+                    ++end;
+                }
+            }
+            if (end - start > 1) {
+                executeMultiLine(session, multiLineInsert, insertions, start, end);
+            } else {
+                actionQueue.execute(first);
+            }
+            start = end;
+        }
+        insertions.clear();
+        session.getJdbcCoordinator().executeBatch();
+    }
+    
+    private void executeMultiLine(
+        EventSource session,
+        HibernateMultiLineInsert multiLineInsert,
+        ExecutableList<AbstractEntityInsertAction> insertions,
+        int start,
+        int end) {
+        
+        EventListenerGroup<PreInsertEventListener> preInsertListeners = listenerGroup(EventType.PRE_INSERT);
+        AbstractEntityInsertAction[] inserted = new AbstractEntityInsertAction[end - start];
+        Serializable[] ids = new Serializable[end - start];
+        Object[][] states = new Object[end - start][];
+        int countInserted = 0;
+        for (int i = start; i < end; ++i) {
+            AbstractEntityInsertAction action = insertions.get(i);
+            if (!preInsert(preInsertListeners, session, action)) {
+                inserted[countInserted] = action;
+                ids[countInserted] = action.getId();
+                states[countInserted] = action.getState();
+                ++countInserted;
+            }
+        }
+        
+        if (countInserted > 0) {
+            multiLineInsert.insertPrepared(
+                (AbstractSharedSessionContract) session,
+                Arrays.copyOf(ids, countInserted),
+                Arrays.copyOf(states, countInserted));
+        }
+        
+        EntityPersister persister = multiLineInsert.getPersister();
+        PersistenceContext persistenceContext = session.getPersistenceContext();
+        for (int i = 0; i < countInserted; ++i) {
+            AbstractEntityInsertAction action = inserted[i];
+            EntityEntry entry = persistenceContext.getEntry(action.getInstance());
+            if (entry == null) {
+                throw new AssertionFailure("possible non-threadsafe access to session");
+            }
+            entry.postInsert(action.getState());
+            persistenceContext.registerInsertedKey(persister, action.getId());
+        }
+        
+        EventListenerGroup<PostInsertEventListener> postInsertListeners = listenerGroup(EventType.POST_INSERT);
+        for (int i = start; i < end; ++i) {
+            AbstractEntityInsertAction action = insertions.get(i);
+            action.handleNaturalIdPostSaveNotifications(action.getId());
+            postInsert(postInsertListeners, session, action);
+            completeExecution(session.getActionQueue(), action);
+        }
+        
+        StatisticsImplementor statistics = session.getFactory().getStatistics();
+        if (statistics.isStatisticsEnabled()) {
+            for (int i = 0; i < countInserted; ++i) {
+                statistics.insertEntity(persister.getEntityName());
+            }
+        }
+    }
+    
+    // same as the end of EntityInsertAction.execute and the cleanup of ActionQueue.execute
+    private static void completeExecution(ActionQueue actionQueue, AbstractEntityInsertAction action) {
+        invokeMethod(action, MARK_EXECUTED, Void.class);
+        if (action.getBeforeTransactionCompletionProcess() != null) {
+            actionQueue.registerProcess(action.getBeforeTransactionCompletionProcess());
+        }
+        if (action.getAfterTransactionCompletionProcess() != null) {
+            actionQueue.registerProcess(action.getAfterTransactionCompletionProcess());
+        }
+    }
+    
+    private HibernateMultiLineInsert lookupEligible(AbstractEntityInsertAction action) {
+        if (!(action instanceof EntityInsertAction)) {
+            // identity inserts are executed right away by Hibernate, they rarely get queued
+            return null;
+        }
+        EntityPersister persister = action.getPersister();
+        if (persister.hasCache()
+            || persister.hasInsertGeneratedProperties()
+            || persister.isVersionPropertyGenerated()) {
+            // these would need the per-entity processing of EntityInsertAction after the insert
+            return null;
+        }
+        if (!listenerGroup(EventType.POST_COMMIT_INSERT).isEmpty()) {
+            // the action itself is registered as an after transaction completion process for these
+            return null;
+        }
+        HibernateMultiLineInsert multiLineInsert = registry.lookup(persister);
+        if (multiLineInsert == null || multiLineInsert.isIdentityInsert()) {
+            return null;
+        }
+        return multiLineInsert;
+    }
+    
+    private static boolean isSameInsert(AbstractEntityInsertAction first, AbstractEntityInsertAction action) {
+        return action instanceof EntityInsertAction && action.getPersister() == first.getPersister();
+    }
+    
+    // same as EntityInsertAction.preInsert, returns true if the insert is vetoed
+    private static boolean preInsert(
+        EventListenerGroup<PreInsertEventListener> listenerGroup,
+        EventSource session,
+        AbstractEntityInsertAction action) {
+        if (listenerGroup.isEmpty()) {
+            return false;
+        }
+        boolean veto = false;
+        PreInsertEvent event = new PreInsertEvent(
+            action.getInstance(), action.getId(), action.getState(), action.getPersister(), session);
+        for (PreInsertEventListener listener : listenerGroup.listeners()) {
+            veto |= listener.onPreInsert(event);
+        }
+        return veto;
+    }
+    
+    // same as EntityInsertAction.postInsert
+    private static void postInsert(
+        EventListenerGroup<PostInsertEventListener> listenerGroup,
+        EventSource session,
+        AbstractEntityInsertAction action) {
+        if (listenerGroup.isEmpty()) {
+            return;
+        }
+        PostInsertEvent event = new PostInsertEvent(
+            action.getInstance(), action.getId(), action.getState(), action.getPersister(), session);
+        for (PostInsertEventListener listener : listenerGroup.listeners()) {
+            listener.onPostInsert(event);
+        }
+    }
+    
+    private <T> EventListenerGroup<T> listenerGroup(EventType<T> eventType) {
+        return eventListenerRegistry.getEventListenerGroup(eventType);
+    }
+    
+    static Field INSERTIONS = lookupField(ActionQueue.class, "insertions");
+    static Field ORPHAN_REMOVALS = lookupField(ActionQueue.class, "orphanRemovals");
+    static Method MARK_EXECUTED = lookupMethod(AbstractEntityInsertAction.class, "markExecuted");
+    
+}
@@ -0,0 +1,114 @@
+package com.doctusoft.hibernate.extras;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.internal.DefaultAutoFlushEventListener;
+import org.hibernate.event.internal.DefaultFlushEventListener;
+import org.hibernate.event.service.spi.DuplicationStrategy;
+import org.hibernate.event.service.spi.EventListenerGroup;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventSource;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+
+import java.util.stream.StreamSupport;
+
+// registered through META-INF/services, but only replaces the flush listeners if ENABLED is set to true
+public class MultiLineInsertIntegrator implements Integrator {
+    
+    public static final String ENABLED = "hibernate.extras.multi_line_insert_flush";
+    
+    @Override
+    public void integrate(
+        Metadata metadata,
+        SessionFactoryImplementor sessionFactory,
+        SessionFactoryServiceRegistry serviceRegistry) {
+        
+        boolean enabled = serviceRegistry
+            .getService(ConfigurationService.class)
+            .getSetting(ENABLED, StandardConverters.BOOLEAN, false);
+        if (!enabled) {
+            return;
+        }
+        EventListenerRegistry eventListenerRegistry = serviceRegistry.getService(EventListenerRegistry.class);
+        MultiLineInsertActions insertActions = MultiLineInsertActions.create(
+            MultiLineInsertRegistry.create(sessionFactory),
+            eventListenerRegistry);
+        replaceListener(eventListenerRegistry, EventType.FLUSH, DefaultFlushEventListener.class,
+            new MultiLineFlushEventListener(insertActions));
+        replaceListener(eventListenerRegistry, EventType.AUTO_FLUSH, DefaultAutoFlushEventListener.class,
+            new MultiLineAutoFlushEventListener(insertActions));
+    }
+    
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        // nothing to release
+    }
+    
+    private static <T> void replaceListener(
+        EventListenerRegistry eventListenerRegistry,
+        EventType<T> eventType,
+        Class<? extends T> defaultListenerClass,
+        T listener) {
+        
+        EventListenerGroup<T> listenerGroup = eventListenerRegistry.getEventListenerGroup(eventType);
+        boolean hasDefaultListener = StreamSupport.stream(listenerGroup.listeners().spliterator(), false)
+            .anyMatch(original -> original.getClass() == defaultListenerClass);
+        if (!hasDefaultListener) {
+            // a customized listener would flush a second time if ours were just appended
+            return;
+        }
+        listenerGroup.addDuplicationStrategy(new DuplicationStrategy() {
+            
+            @Override
+            public boolean areMatch(Object added, Object original) {
+                return added == listener && original.getClass() == defaultListenerClass;
+            }
+            
+            @Override
+            public Action getAction() {
+                return Action.REPLACE_ORIGINAL;
+            }
+            
+        });
+        listenerGroup.appendListener(listener);
+    }
+    
+    private static class MultiLineFlushEventListener extends DefaultFlushEventListener {
+        
+        private final transient MultiLineInsertActions insertActions;
+        
+        MultiLineFlushEventListener(MultiLineInsertActions insertActions) {
+            this.insertActions = insertActions;
+        }
+        
+        @Override
+        protected void performExecutions(EventSource session) {
+            insertActions.performExecutions(session);
+        }
+        
+        private static final long serialVersionUID = 1L;
+        
+    }
+    
+    private static class MultiLineAutoFlushEventListener extends DefaultAutoFlushEventListener {
+        
+        private final transient MultiLineInsertActions insertActions;
+        
+        MultiLineAutoFlushEventListener(MultiLineInsertActions insertActions) {
+            this.insertActions = insertActions;
+        }
+        
+        @Override
+        protected void performExecutions(EventSource session) {
+            insertActions.performExecutions(session);
+        }
+        
+        private static final long serialVersionUID = 1L;
+        
+    }
+    
+}
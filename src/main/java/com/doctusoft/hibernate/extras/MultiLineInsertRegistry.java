@@ -0,0 +1,69 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.base.Preconditions.*;
+import static java.util.Objects.*;
+
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class MultiLineInsertRegistry {
+    
+    public static MultiLineInsertRegistry create(SessionFactory sessionFactory) {
+        requireNonNull(sessionFactory, "sessionFactory");
+        return new MultiLineInsertRegistry(
+            sessionFactory.unwrap(SessionFactoryImplementor.class),
+            new ConcurrentHashMap<>());
+    }
+    
+    public static MultiLineInsertRegistry createInitialized(SessionFactory sessionFactory) {
+        MultiLineInsertRegistry registry = create(sessionFactory);
+        registry.initializeAll();
+        return registry;
+    }
+    
+    @Getter
+    private final SessionFactoryImplementor sessionFactory;
+    
+    // the absent value remembers persisters not eligible for multi-line inserts
+    private final ConcurrentMap<EntityPersister, Optional<HibernateMultiLineInsert>> entries;
+    
+    public HibernateMultiLineInsert lookup(EntityPersister persister) {
+        requireNonNull(persister, "persister");
+        Optional<HibernateMultiLineInsert> entry = entries.get(persister);
+        if (entry == null) {
+            checkArgument(persister.getFactory() == sessionFactory,
+                "Persister belongs to another SessionFactory: %s", persister.getEntityName());
+            // computed outside of the map: racing threads may build the same entry twice, but the first one wins
+            entry = Optional.ofNullable(HibernateMultiLineInsert.lookup(persister));
+            Optional<HibernateMultiLineInsert> previous = entries.putIfAbsent(persister, entry);
+            if (previous != null) {
+                entry = previous;
+            }
+        }
+        return entry.orElse(null);
+    }
+    
+    public HibernateMultiLineInsert lookup(Class<?> entityClass) {
+        requireNonNull(entityClass, "entityClass");
+        return lookup(sessionFactory.getMetamodel().entityPersister(entityClass));
+    }
+    
+    public HibernateMultiLineInsert lookup(String entityName) {
+        requireNonNull(entityName, "entityName");
+        return lookup(sessionFactory.getMetamodel().entityPersister(entityName));
+    }
+    
+    public void initializeAll() {
+        sessionFactory.getMetamodel().entityPersisters().values().forEach(this::lookup);
+    }
+    
+}
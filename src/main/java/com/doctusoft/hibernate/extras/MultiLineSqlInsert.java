@@ -1,18 +1,48 @@
 package com.doctusoft.hibernate.extras;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
 import lombok.Value;
 
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 import java.util.regex.*;
 
 @Value
 @AllArgsConstructor(access = AccessLevel.PRIVATE)
+@EqualsAndHashCode(exclude = {"multiLineInsertStrings", "placeholderPositions", "defaultValuesParts"})
+@ToString(exclude = {"multiLineInsertStrings", "placeholderPositions", "defaultValuesParts"})
 public class MultiLineSqlInsert {
     
     String insertPart;
     String valuesPart;
     
+    // bounded by the total length of the cached statements, so that a few huge ones cannot hog the memory;
+    // a single segment, as guava splits the weight limit evenly between the segments
+    @Getter(AccessLevel.NONE)
+    LoadingCache<Integer, String> multiLineInsertStrings = CacheBuilder.newBuilder()
+        .concurrencyLevel(1)
+        .maximumWeight(MAX_CACHED_SQL_LENGTH)
+        .weigher((Integer countEntities, String sql) -> sql.length())
+        .build(CacheLoader.from(this::createMultiLineInsertString));
+    
+    // the offsets of the ? placeholders in valuesPart, null if some of them is part of an sql expression
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
+    int[] placeholderPositions = findPlaceholderPositions(valuesPart);
+    
+    // the values parts of the recurring rows, keyed by the placeholders replaced with DEFAULT
+    @Getter(AccessLevel.NONE)
+    LoadingCache<BitSet, String> defaultValuesParts = CacheBuilder.newBuilder()
+        .maximumSize(MAX_CACHED_DEFAULT_VALUES_PARTS)
+        .build(CacheLoader.from(this::createDefaultValuesPart));
+    
     public static MultiLineSqlInsert tryParse(String sqlInsertString) {
         if (sqlInsertString == null) {
             // no insert statement to work on
@@ -37,6 +67,10 @@ public class MultiLineSqlInsert {
         return new MultiLineSqlInsert(insertPart, valuesPart);
     }
     
+    public String getMultiLineInsertString(int countEntities) {
+        return multiLineInsertStrings.getUnchecked(countEntities);
+    }
+    
     public String createMultiLineInsertString(int countEntities) {
         int length = insertPart.length() + countEntities * (1 + valuesPart.length());
         StringBuilder builder = new StringBuilder(length);
@@ -48,6 +82,86 @@ public class MultiLineSqlInsert {
         return builder.toString();
     }
     
+    // the number of placeholders that can be replaced by the DEFAULT keyword, -1 if they cannot be
+    public int getPlainPlaceholderCount() {
+        int[] placeholderPositions = getPlaceholderPositions();
+        return placeholderPositions == null ? -1 : placeholderPositions.length;
+    }
+    
+    // the multi-line insert with the placeholders set in the bitmap of each row replaced by DEFAULT
+    public String getMultiLineInsertString(List<BitSet> defaultPlaceholdersOfRows) {
+        if (getPlaceholderPositions() == null) {
+            throw new IllegalStateException("The placeholders of " + valuesPart + " cannot be replaced by DEFAULT");
+        }
+        StringBuilder builder = new StringBuilder(
+            insertPart.length() + defaultPlaceholdersOfRows.size() * (1 + valuesPart.length()));
+        builder.append(insertPart);
+        for (int i = 0; i < defaultPlaceholdersOfRows.size(); ++i) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            BitSet defaultPlaceholders = defaultPlaceholdersOfRows.get(i);
+            builder.append(
+                defaultPlaceholders.isEmpty() ? valuesPart : defaultValuesParts.getUnchecked(defaultPlaceholders));
+        }
+        return builder.toString();
+    }
+    
+    private String createDefaultValuesPart(BitSet defaultPlaceholders) {
+        StringBuilder builder = new StringBuilder(valuesPart.length() + 8 * defaultPlaceholders.cardinality());
+        int[] placeholderPositions = getPlaceholderPositions();
+        int offset = 0;
+        for (int i = defaultPlaceholders.nextSetBit(0); i >= 0; i = defaultPlaceholders.nextSetBit(i + 1)) {
+            int position = placeholderPositions[i];
+            builder.append(valuesPart, offset, position).append("DEFAULT");
+            offset = position + 1;
+        }
+        return builder.append(valuesPart, offset, valuesPart.length()).toString();
+    }
+    
+    private static int[] findPlaceholderPositions(String valuesPart) {
+        int[] positions = new int[valuesPart.length()];
+        int count = 0;
+        boolean quoted = false;
+        // the values list itself is at depth 1
+        int depth = 0;
+        for (int i = 0; i < valuesPart.length(); ++i) {
+            char c = valuesPart.charAt(i);
+            if (c == '\'') {
+                quoted = !quoted;
+            } else if (quoted) {
+                continue;
+            } else if (c == '(') {
+                ++depth;
+            } else if (c == ')') {
+                --depth;
+            } else if (c == '?') {
+                // a placeholder in a column write expression, e.G. upper(?), cannot be replaced by DEFAULT
+                if (depth != 1
+                    || !isValueSeparator(valuesPart, i, -1, '(')
+                    || !isValueSeparator(valuesPart, i, 1, ')')) {
+                    return null;
+                }
+                positions[count++] = i;
+            }
+        }
+        return Arrays.copyOf(positions, count);
+    }
+    
+    private static boolean isValueSeparator(String valuesPart, int position, int direction, char parenthesis) {
+        for (int i = position + direction; i >= 0 && i < valuesPart.length(); i += direction) {
+            char c = valuesPart.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                return c == ',' || c == parenthesis;
+            }
+        }
+        return false;
+    }
+    
+    static final long MAX_CACHED_SQL_LENGTH = 1 << 20;
+    
+    static final long MAX_CACHED_DEFAULT_VALUES_PARTS = 256;
+    
     static Pattern SPLITTER = Pattern.compile("(\\sVALUES)(\\s+[(])", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
     
 }
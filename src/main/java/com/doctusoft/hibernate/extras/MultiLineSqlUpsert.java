@@ -0,0 +1,99 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.dialect.PostgreSQL95Dialect;
+
+import java.util.regex.Pattern;
+
+import static java.util.Objects.*;
+
+// turns the multi-line inserts of a table into upserts with the conflict clause of the dialect
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class MultiLineSqlUpsert {
+    
+    public enum ConflictAction {
+        // the rows of existing keys are skipped
+        IGNORE,
+        // the non-key columns of the existing rows are overwritten, not applicable to versioned entities
+        UPDATE
+    }
+    
+    // null if the dialect has no multi-line upsert syntax telling the inserted rows from the duplicates
+    public static MultiLineSqlUpsert forDialect(
+        Dialect dialect,
+        ConflictAction conflictAction,
+        String[] keyColumnNames,
+        String[] updatedColumnNames) {
+        requireNonNull(conflictAction, "conflictAction");
+        // a no-op assignment, if there is nothing else to update
+        String[] assignedColumnNames = updatedColumnNames.length > 0 ? updatedColumnNames : keyColumnNames;
+        if (dialect instanceof PostgreSQL95Dialect) {
+            String conflictTarget = " on conflict (" + String.join(", ", keyColumnNames) + ")";
+            if (conflictAction == ConflictAction.IGNORE) {
+                return new MultiLineSqlUpsert(conflictAction, false, conflictTarget + " do nothing", false);
+            }
+            // xmax is only set for the row versions replacing an existing row
+            String conflictClause = conflictTarget + " do update set "
+                + assignments(assignedColumnNames, "%1$s = excluded.%1$s") + " returning (xmax = 0)";
+            return new MultiLineSqlUpsert(conflictAction, false, conflictClause, true);
+        }
+        if (dialect instanceof MySQLDialect) {
+            if (conflictAction == ConflictAction.IGNORE) {
+                // note that insert ignore downgrades some other errors to warnings too, e.G. data truncations
+                return new MultiLineSqlUpsert(conflictAction, true, "", false);
+            }
+            String conflictClause =
+                " on duplicate key update " + assignments(assignedColumnNames, "%1$s = values(%1$s)");
+            return new MultiLineSqlUpsert(conflictAction, false, conflictClause, false);
+        }
+        // H2 can merge multiple lines, but the update count does not tell the inserted rows from the updated ones
+        return null;
+    }
+    
+    private static String assignments(String[] columnNames, String format) {
+        StringBuilder builder = new StringBuilder();
+        for (String columnName : columnNames) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(String.format(format, columnName));
+        }
+        return builder.toString();
+    }
+    
+    ConflictAction conflictAction;
+    // MySQL ignores the duplicates with insert ignore
+    boolean insertIgnore;
+    String conflictClause;
+    // the statement returns a boolean row for each inserted or updated line, true for the inserted ones
+    boolean returningInsertedFlags;
+    
+    public String toUpsertString(String multiLineInsertString) {
+        String sql = insertIgnore
+            ? INSERT.matcher(multiLineInsertString).replaceFirst("$0ignore ")
+            : multiLineInsertString;
+        return sql + conflictClause;
+    }
+    
+    // the outcome of the rows of an upsert statement by the update count it returned
+    public UpsertResult countRows(int countRows, int rowCount) {
+        if (conflictAction == ConflictAction.IGNORE) {
+            // the ignored duplicates are not counted
+            return UpsertResult.of(rowCount, 0, countRows - rowCount);
+        }
+        // MySQL counts 1 for an inserted line and 2 for an updated one, this is exact only if every duplicate is
+        // actually changed: an unchanged one counts 0, or 1 with the CLIENT_FOUND_ROWS flag (Connector/J default)
+        int updatedRows = Math.max(0, Math.min(countRows, rowCount - countRows));
+        return UpsertResult.of(countRows - updatedRows, updatedRows, 0);
+    }
+    
+    // allows the comment prepended by hibernate.use_sql_comments
+    static Pattern INSERT = Pattern.compile(
+        "^\\s*(/\\*.*?\\*/\\s*)?insert\\s", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    
+}
@@ -0,0 +1,377 @@
+package com.doctusoft.hibernate.extras;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.hibernate.HibernateException;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static java.util.Objects.*;
+
+// collects the parameter setter calls made on a PreparedStatement proxy, to replay them later onto a real statement
+// at a different parameter index, the other calls are delegated to a statement prepared on the first such call
+class ParameterRecorder implements InvocationHandler {
+    
+    static ParameterRecorder create(Supplier<PreparedStatement> delegate) {
+        return new ParameterRecorder(requireNonNull(delegate, "delegate"));
+    }
+    
+    private final Supplier<PreparedStatement> delegateSupplier;
+    private final PreparedStatement statement;
+    private PreparedStatement delegate;
+    private Setter[] setters = new Setter[16];
+    // the value argument of each setter, the Method of the reflectively replayed ones
+    private Object[] values = new Object[16];
+    // the argument after the value, e.G. the sql type of setObject, or all the arguments of the reflective setters
+    private Object[] extras = new Object[16];
+    private int parameterCount;
+    
+    private ParameterRecorder(Supplier<PreparedStatement> delegateSupplier) {
+        this.delegateSupplier = delegateSupplier;
+        this.statement = (PreparedStatement) Proxy.newProxyInstance(
+            ParameterRecorder.class.getClassLoader(),
+            new Class<?>[] { PreparedStatement.class },
+            this);
+    }
+    
+    PreparedStatement getStatement() {
+        return statement;
+    }
+    
+    RecordedParameters takeParameters() {
+        RecordedParameters parameters = new RecordedParameters(
+            Arrays.copyOf(setters, parameterCount),
+            Arrays.copyOf(values, parameterCount),
+            Arrays.copyOf(extras, parameterCount));
+        clearParameters();
+        return parameters;
+    }
+    
+    // hands the statement prepared for the delegated calls to the releaser, if any was prepared
+    void releaseDelegate(Consumer<PreparedStatement> releaser) {
+        if (delegate != null) {
+            PreparedStatement released = delegate;
+            delegate = null;
+            releaser.accept(released);
+        }
+    }
+    
+    private void clearParameters() {
+        Arrays.fill(setters, 0, parameterCount, null);
+        Arrays.fill(values, 0, parameterCount, null);
+        Arrays.fill(extras, 0, parameterCount, null);
+        parameterCount = 0;
+    }
+    
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "ParameterRecorder@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+        }
+        Setter setter = SETTERS.get(method);
+        if (setter == null && isParameterSetter(method, args)) {
+            setter = Setter.REFLECTIVE;
+        }
+        if (setter != null) {
+            int index = (Integer) args[0];
+            if (index > setters.length) {
+                int length = Math.max(index, setters.length * 2);
+                setters = Arrays.copyOf(setters, length);
+                values = Arrays.copyOf(values, length);
+                extras = Arrays.copyOf(extras, length);
+            }
+            setters[index - 1] = setter;
+            if (setter == Setter.REFLECTIVE) {
+                values[index - 1] = method;
+                extras[index - 1] = args;
+            } else {
+                values[index - 1] = args[1];
+                extras[index - 1] = args.length > 2 ? args[2] : null;
+            }
+            parameterCount = Math.max(parameterCount, index);
+            return null;
+        }
+        switch (method.getName()) {
+            case "clearParameters":
+                clearParameters();
+                return null;
+            case "close":
+                // the delegate is released by the owner of the recorder
+                return null;
+            case "isClosed":
+                return false;
+            default:
+                if (delegate == null) {
+                    delegate = delegateSupplier.get();
+                }
+                try {
+                    return method.invoke(delegate, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+        }
+    }
+    
+    private static boolean isParameterSetter(Method method, Object[] args) {
+        return method.getDeclaringClass() == PreparedStatement.class
+            && method.getName().startsWith("set")
+            && args != null && args.length >= 2
+            && method.getParameterTypes()[0] == int.class;
+    }
+    
+    @Value
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    static class RecordedParameters {
+        
+        Setter[] setters;
+        Object[] values;
+        Object[] extras;
+        
+        int getParameterCount() {
+            return setters.length;
+        }
+        
+        void bind(PreparedStatement ps, int index, int targetIndex) throws SQLException {
+            Setter setter = setters[index - 1];
+            if (setter == null) {
+                throw new HibernateException("Parameter " + index + " was not set");
+            }
+            setter.bind(ps, targetIndex, values[index - 1], extras[index - 1]);
+        }
+        
+        // binds all the parameters in their recorded order starting at the given index, returns the next index
+        int bindAll(PreparedStatement ps, int startIndex) throws SQLException {
+            for (int i = 1; i <= setters.length; ++i) {
+                bind(ps, i, startIndex++);
+            }
+            return startIndex;
+        }
+        
+    }
+    
+    // the setters used by the Hibernate type descriptors are replayed with direct calls, the rest reflectively
+    enum Setter {
+        
+        NULL("setNull", int.class, int.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setNull(index, (Integer) value);
+            }
+        },
+        NULL_TYPE_NAME("setNull", int.class, int.class, String.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setNull(index, (Integer) value, (String) extra);
+            }
+        },
+        BOOLEAN("setBoolean", int.class, boolean.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setBoolean(index, (Boolean) value);
+            }
+        },
+        BYTE("setByte", int.class, byte.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setByte(index, (Byte) value);
+            }
+        },
+        SHORT("setShort", int.class, short.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setShort(index, (Short) value);
+            }
+        },
+        INT("setInt", int.class, int.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setInt(index, (Integer) value);
+            }
+        },
+        LONG("setLong", int.class, long.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setLong(index, (Long) value);
+            }
+        },
+        FLOAT("setFloat", int.class, float.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setFloat(index, (Float) value);
+            }
+        },
+        DOUBLE("setDouble", int.class, double.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setDouble(index, (Double) value);
+            }
+        },
+        BIG_DECIMAL("setBigDecimal", int.class, BigDecimal.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setBigDecimal(index, (BigDecimal) value);
+            }
+        },
+        STRING("setString", int.class, String.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setString(index, (String) value);
+            }
+        },
+        NSTRING("setNString", int.class, String.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setNString(index, (String) value);
+            }
+        },
+        BYTES("setBytes", int.class, byte[].class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setBytes(index, (byte[]) value);
+            }
+        },
+        DATE("setDate", int.class, Date.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setDate(index, (Date) value);
+            }
+        },
+        DATE_CALENDAR("setDate", int.class, Date.class, Calendar.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setDate(index, (Date) value, (Calendar) extra);
+            }
+        },
+        TIME("setTime", int.class, Time.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setTime(index, (Time) value);
+            }
+        },
+        TIME_CALENDAR("setTime", int.class, Time.class, Calendar.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setTime(index, (Time) value, (Calendar) extra);
+            }
+        },
+        TIMESTAMP("setTimestamp", int.class, Timestamp.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setTimestamp(index, (Timestamp) value);
+            }
+        },
+        TIMESTAMP_CALENDAR("setTimestamp", int.class, Timestamp.class, Calendar.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setTimestamp(index, (Timestamp) value, (Calendar) extra);
+            }
+        },
+        OBJECT("setObject", int.class, Object.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setObject(index, value);
+            }
+        },
+        OBJECT_SQL_TYPE("setObject", int.class, Object.class, int.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setObject(index, value, (Integer) extra);
+            }
+        },
+        BLOB("setBlob", int.class, Blob.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setBlob(index, (Blob) value);
+            }
+        },
+        CLOB("setClob", int.class, Clob.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setClob(index, (Clob) value);
+            }
+        },
+        BINARY_STREAM("setBinaryStream", int.class, InputStream.class, long.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setBinaryStream(index, (InputStream) value, (Long) extra);
+            }
+        },
+        CHARACTER_STREAM("setCharacterStream", int.class, Reader.class, long.class) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                ps.setCharacterStream(index, (Reader) value, (Long) extra);
+            }
+        },
+        // value is the Method, extra is the recorded arguments
+        REFLECTIVE(null) {
+            @Override
+            void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException {
+                Object[] args = ((Object[]) extra).clone();
+                args[0] = index;
+                try {
+                    ((Method) value).invoke(ps, args);
+                } catch (InvocationTargetException e) {
+                    Throwables.throwIfInstanceOf(e.getCause(), SQLException.class);
+                    throw Throwables.propagate(e.getCause());
+                } catch (IllegalAccessException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        };
+        
+        final String methodName;
+        final Class<?>[] parameterTypes;
+        
+        Setter(String methodName, Class<?>... parameterTypes) {
+            this.methodName = methodName;
+            this.parameterTypes = parameterTypes;
+        }
+        
+        abstract void bind(PreparedStatement ps, int index, Object value, Object extra) throws SQLException;
+        
+    }
+    
+    static final ImmutableMap<Method, Setter> SETTERS = lookupSetters();
+    
+    private static ImmutableMap<Method, Setter> lookupSetters() {
+        ImmutableMap.Builder<Method, Setter> setters = ImmutableMap.builder();
+        for (Setter setter : Setter.values()) {
+            if (setter.methodName != null) {
+                try {
+                    setters.put(PreparedStatement.class.getMethod(setter.methodName, setter.parameterTypes), setter);
+                } catch (NoSuchMethodException e) {
+                    throw Throwables.propagate(e);
+                }
+            }
+        }
+        return setters.build();
+    }
+    
+}
@@ -0,0 +1,110 @@
+package com.doctusoft.hibernate.extras;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableSet;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+import org.hibernate.Session;
+import org.hibernate.engine.internal.Versioning;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hibernate.tuple.InMemoryValueGenerationStrategy;
+import org.hibernate.tuple.ValueGenerator;
+import org.hibernate.tuple.entity.EntityMetamodel;
+import org.hibernate.type.VersionType;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.doctusoft.hibernate.extras.Reflection.*;
+
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+class PreInsertPlan {
+    
+    static PreInsertPlan of(EntityPersister persister) {
+        EntityMetamodel entityMetamodel = persister.getEntityMetamodel();
+        int[] generatedProperties = new int[0];
+        ValueGenerator<?>[] valueGenerators = new ValueGenerator<?>[0];
+        if (entityMetamodel.hasPreInsertGeneratedValues()) {
+            InMemoryValueGenerationStrategy[] strategies = entityMetamodel.getInMemoryValueGenerationStrategies();
+            generatedProperties = new int[strategies.length];
+            valueGenerators = new ValueGenerator<?>[strategies.length];
+            int count = 0;
+            for (int i = 0; i < strategies.length; i++) {
+                InMemoryValueGenerationStrategy strategy = strategies[i];
+                if (strategy != null && strategy.getGenerationTiming().includesInsert()) {
+                    generatedProperties[count] = i;
+                    valueGenerators[count] = strategy.getValueGenerator();
+                    ++count;
+                }
+            }
+            generatedProperties = Arrays.copyOf(generatedProperties, count);
+            valueGenerators = Arrays.copyOf(valueGenerators, count);
+        }
+        boolean versioned = entityMetamodel.isVersioned();
+        return new PreInsertPlan(
+            persister,
+            versioned,
+            versioned ? persister.getVersionProperty() : -1,
+            versioned ? persister.getVersionType() : null,
+            generatedProperties,
+            valueGenerators,
+            Arrays.stream(valueGenerators).allMatch(PreInsertPlan::isOwnerIndependent));
+    }
+    
+    EntityPersister persister;
+    boolean versioned;
+    int versionProperty;
+    VersionType<?> versionType;
+    int[] generatedProperties;
+    ValueGenerator<?>[] valueGenerators;
+    // the generators don't read the entity, so they can be applied without an instance
+    boolean ownerIndependent;
+    
+    // the entity is null for the raw states of HibernateMultiLineInsert.insertStates, only the fields are written then,
+    // which is rejected for the generators that may read the entity, e.G. the ones of @GeneratorType
+    void apply(Session session, SharedSessionContractImplementor sessionImpl, Object entity, Object[] fields) {
+        if (entity == null && !ownerIndependent) {
+            throw new IllegalStateException("The value generators of " + persister.getEntityName()
+                + " may read the entity instance");
+        }
+        if (versioned) {
+            boolean substitute = Versioning.seedVersion(fields, versionProperty, versionType, sessionImpl);
+            if (substitute && entity != null) {
+                persister.setPropertyValues(entity, fields);
+            }
+        }
+        for (int i = 0; i < generatedProperties.length; ++i) {
+            int iAttr = generatedProperties[i];
+            fields[iAttr] = valueGenerators[i].generateValue(session, entity);
+            if (entity != null) {
+                persister.setPropertyValue(entity, iAttr, fields[iAttr]);
+            }
+        }
+    }
+    
+    // the generators of @CreationTimestamp and @UpdateTimestamp only read the clock
+    static boolean isOwnerIndependent(ValueGenerator<?> valueGenerator) {
+        return OWNER_INDEPENDENT_GENERATORS.contains(valueGenerator);
+    }
+    
+    static final ImmutableSet<ValueGenerator<?>> OWNER_INDEPENDENT_GENERATORS = lookupTimestampGenerators();
+    
+    private static ImmutableSet<ValueGenerator<?>> lookupTimestampGenerators() {
+        Class<?> timestampGenerators;
+        try {
+            timestampGenerators = Class.forName("org.hibernate.tuple.TimestampGenerators");
+        } catch (ClassNotFoundException e) {
+            throw Throwables.propagate(e);
+        }
+        Map<?, ?> generators = readField(null, lookupField(timestampGenerators, "generators"), Map.class);
+        ImmutableSet.Builder<ValueGenerator<?>> builder = ImmutableSet.builder();
+        for (Object generator : generators.values()) {
+            builder.add((ValueGenerator<?>) generator);
+        }
+        return builder.build();
+    }
+    
+}
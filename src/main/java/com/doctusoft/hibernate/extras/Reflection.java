@@ -0,0 +1,63 @@
+package com.doctusoft.hibernate.extras;
+
+import com.google.common.base.Throwables;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+// access to the non-public members of the Hibernate internals
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class Reflection {
+    
+    static Field lookupField(Class<?> declaringClass, String name) {
+        try {
+            Field field = declaringClass.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+    
+    static <T> T readField(Object object, Field field, Class<T> returnType) {
+        try {
+            Object value = field.get(object);
+            return returnType.cast(value);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+    
+    static Method lookupMethod(Class<?> declaringClass, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = declaringClass.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return method;
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+    
+    static <T> T invokeMethod(Object object, Method method, Class<T> returnType, Object... args) {
+        try {
+            Object value = method.invoke(object, args);
+            return returnType.cast(value);
+        } catch (Exception e) {
+            throw Throwables.propagate(e);
+        }
+    }
+    
+    // for the methods called for every row, invokeExact avoids the boxing and the argument array of invoke
+    static MethodHandle lookupMethodHandle(Class<?> declaringClass, String name, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.lookup().unreflect(lookupMethod(declaringClass, name, parameterTypes));
+        } catch (IllegalAccessException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+    
+}
@@ -0,0 +1,33 @@
+package com.doctusoft.hibernate.extras;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+// the rows of an upsert by their outcome, the duplicates are either updated or ignored depending on the ConflictAction
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class UpsertResult {
+    
+    public static UpsertResult of(int insertedRows, int updatedRows, int ignoredRows) {
+        return new UpsertResult(insertedRows, updatedRows, ignoredRows);
+    }
+    
+    public static final UpsertResult EMPTY = of(0, 0, 0);
+    
+    int insertedRows;
+    int updatedRows;
+    int ignoredRows;
+    
+    public int getRows() {
+        return insertedRows + updatedRows + ignoredRows;
+    }
+    
+    public UpsertResult plus(UpsertResult other) {
+        return of(
+            insertedRows + other.insertedRows,
+            updatedRows + other.updatedRows,
+            ignoredRows + other.ignoredRows);
+    }
+    
+}
@@ -0,0 +1,47 @@
+package com.doctusoft.hibernate.extras;
+
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQL57Dialect;
+import org.hibernate.dialect.Oracle12cDialect;
+import org.hibernate.dialect.PostgreSQL95Dialect;
+import org.hibernate.dialect.SQLServer2012Dialect;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class BindParameterLimitsTest {
+    
+    @Test
+    public void limitsByDialect() {
+        assertThat(BindParameterLimits.forDialect(new SQLServer2012Dialect()), is(BindParameterLimits.SQL_SERVER));
+        assertThat(BindParameterLimits.forDialect(new PostgreSQL95Dialect()), is(BindParameterLimits.POSTGRESQL));
+        assertThat(BindParameterLimits.forDialect(new MySQL57Dialect()), is(BindParameterLimits.MYSQL));
+        assertThat(BindParameterLimits.forDialect(new H2Dialect()), is(BindParameterLimits.UNLIMITED));
+    }
+    
+    @Test
+    public void inListElementsByDialect() {
+        assertThat(BindParameterLimits.maxInListElements(new Oracle12cDialect()), is(1000));
+        assertThat(BindParameterLimits.maxInListElements(new H2Dialect()), is(Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void rowsPerStatementFitTheLimit() {
+        assertThat(BindParameterLimits.maxRowsPerStatement(BindParameterLimits.SQL_SERVER, 10), is(210));
+        assertThat(BindParameterLimits.maxRowsPerStatement(BindParameterLimits.SQL_SERVER, 7), is(300));
+        assertThat(BindParameterLimits.maxRowsPerStatement(BindParameterLimits.POSTGRESQL, 3), is(10922));
+    }
+    
+    @Test
+    public void unlimitedOrParameterlessRowsAreNotSplit() {
+        assertThat(BindParameterLimits.maxRowsPerStatement(BindParameterLimits.UNLIMITED, 10), is(Integer.MAX_VALUE));
+        assertThat(BindParameterLimits.maxRowsPerStatement(BindParameterLimits.SQL_SERVER, 0), is(Integer.MAX_VALUE));
+    }
+    
+    @Test
+    public void aSingleRowIsAlwaysAllowed() {
+        assertThat(BindParameterLimits.maxRowsPerStatement(BindParameterLimits.SQL_SERVER, 3000), is(1));
+    }
+    
+}
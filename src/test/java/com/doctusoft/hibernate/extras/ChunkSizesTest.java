@@ -0,0 +1,71 @@
+package com.doctusoft.hibernate.extras;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class ChunkSizesTest {
+    
+    @Test
+    public void unboundedTakesAllTheRemainingRows() {
+        ChunkSizes chunkSizes = ChunkSizes.unbounded();
+        assertThat(chunkSizes.isBucketed(), is(false));
+        assertThat(chunkSizes.nextChunkSize(1), is(1));
+        assertThat(chunkSizes.nextChunkSize(100_000), is(100_000));
+    }
+    
+    @Test
+    public void fixedIsCappedAtTheMaximum() {
+        ChunkSizes chunkSizes = ChunkSizes.fixed(100);
+        assertThat(chunkSizes.isBucketed(), is(false));
+        assertThat(chunkSizes.nextChunkSize(99), is(99));
+        assertThat(chunkSizes.nextChunkSize(100), is(100));
+        assertThat(chunkSizes.nextChunkSize(101), is(100));
+    }
+    
+    @Test
+    public void bucketsTakeTheLargestFittingBucket() {
+        ChunkSizes chunkSizes = ChunkSizes.buckets(8, 32);
+        assertThat(chunkSizes.isBucketed(), is(true));
+        assertThat(chunkSizes.getMaxChunkSize(), is(32));
+        assertThat(chunkSizes.nextChunkSize(1000), is(32));
+        assertThat(chunkSizes.nextChunkSize(32), is(32));
+        assertThat(chunkSizes.nextChunkSize(31), is(8));
+        assertThat(chunkSizes.nextChunkSize(8), is(8));
+        // the bucket of 1 is always added
+        assertThat(chunkSizes.nextChunkSize(7), is(1));
+    }
+    
+    @Test
+    public void powersOfTwoStartAtTheHighestOneBit() {
+        ChunkSizes chunkSizes = ChunkSizes.powersOfTwo(100);
+        assertThat(chunkSizes.getMaxChunkSize(), is(64));
+        assertThat(chunkSizes.nextChunkSize(100), is(64));
+        assertThat(chunkSizes.nextChunkSize(36), is(32));
+        assertThat(chunkSizes.nextChunkSize(3), is(2));
+        assertThat(chunkSizes.nextChunkSize(1), is(1));
+    }
+    
+    @Test
+    public void bucketedChunksAddUpToTheRowCount() {
+        ChunkSizes chunkSizes = ChunkSizes.DEFAULT_BUCKETS;
+        int countChunks = 0;
+        for (int remaining = 1000; remaining > 0; ++countChunks) {
+            remaining -= chunkSizes.nextChunkSize(remaining);
+        }
+        // 512 + 3 * 128 + 3 * 32 + 1 * 8
+        assertThat(countChunks, is(8));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveRemainingIsRejected() {
+        ChunkSizes.unbounded().nextChunkSize(0);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveBucketSizesAreRejected() {
+        ChunkSizes.buckets(16, 0);
+    }
+    
+}
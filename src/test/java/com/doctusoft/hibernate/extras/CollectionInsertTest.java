@@ -0,0 +1,184 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.ManyToMany;
+import javax.persistence.OrderColumn;
+import javax.persistence.SequenceGenerator;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class CollectionInsertTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            Recipe.class,
+            Tag.class);
+        inTransaction(sessionFactory, session -> {
+            session.persist(new Tag(1L, "quick"));
+            session.persist(new Tag(2L, "vegan"));
+        });
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void collectionsOfManagedOwnersAreInsertedInOneStatementEach() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory)
+            .lookup(Recipe.class)
+            .withManageEntities(true);
+        Recipe[] recipes = new Recipe[10];
+        for (int i = 0; i < recipes.length; ++i) {
+            recipes[i] = new Recipe("recipe" + i, ImmutableList.of("step" + i, "serve"));
+            recipes[i].ingredients.add("salt");
+            recipes[i].ingredients.add("ingredient" + i);
+        }
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> {
+            for (Recipe recipe : recipes) {
+                recipe.tags.add(session.get(Tag.class, 1L));
+            }
+            multiLineInsert.insertInBatch(session, recipes);
+            lookup("ingredients").insertInBatch(session, recipes);
+            lookup("steps").insertInBatch(session, recipes);
+            lookup("tags").insertInBatch(session, recipes);
+        });
+        
+        // one statement for the owners and for each collection, the flush found nothing to recreate
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(4));
+        inTransaction(sessionFactory, session -> {
+            for (Recipe recipe : recipes) {
+                Recipe loaded = session.get(Recipe.class, recipe.id);
+                assertThat(loaded.ingredients, containsInAnyOrder("salt", recipe.name.replace("recipe", "ingredient")));
+                assertThat(loaded.steps, contains(recipe.steps.toArray()));
+                assertThat(loaded.tags, contains(hasProperty("name", is("quick"))));
+            }
+        });
+    }
+    
+    @Test
+    public void collectionsOfDetachedOwnersAreInserted() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory).lookup(Recipe.class);
+        Recipe[] recipes = {
+            new Recipe("soup", ImmutableList.of("boil")),
+            new Recipe("salad", ImmutableList.of("wash", "cut", "mix")),
+            new Recipe("water", ImmutableList.of())
+        };
+        
+        inTransaction(sessionFactory, session -> {
+            multiLineInsert.insertInBatch(session, recipes);
+            lookup("steps").insertInBatch(session, recipes);
+        });
+        
+        inTransaction(sessionFactory, session -> {
+            assertThat(session.get(Recipe.class, recipes[1].id).steps, contains("wash", "cut", "mix"));
+            assertThat(session.get(Recipe.class, recipes[2].id).steps, empty());
+        });
+    }
+    
+    @Test
+    public void manyToManyJoinTableRowsAreInserted() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory).lookup(Recipe.class);
+        Recipe recipe = new Recipe("curry", ImmutableList.of());
+        
+        inTransaction(sessionFactory, session -> {
+            recipe.tags.addAll(ImmutableSet.of(session.get(Tag.class, 1L), session.get(Tag.class, 2L)));
+            multiLineInsert.insertInBatch(session, new Object[] { recipe });
+            statementInspector.clear();
+            lookup("tags").insertInBatch(session, new Object[] { recipe });
+            assertThat(statementInspector.statementsStartingWith("insert"), hasSize(1));
+        });
+        
+        inTransaction(sessionFactory, session -> assertThat(session.get(Recipe.class, recipe.id).tags,
+            containsInAnyOrder(hasProperty("name", is("quick")), hasProperty("name", is("vegan")))));
+    }
+    
+    private HibernateMultiLineCollectionInsert lookup(String propertyName) {
+        return HibernateMultiLineCollectionInsert.lookup(sessionFactory.unwrap(SessionFactoryImplementor.class)
+            .getMetamodel()
+            .collectionPersister(Recipe.class.getName() + "." + propertyName));
+    }
+    
+    @Entity(name = "Recipe")
+    public static class Recipe {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "recipe_seq")
+        @SequenceGenerator(name = "recipe_seq", sequenceName = "recipe_seq", allocationSize = 50)
+        Long id;
+        
+        String name;
+        
+        @ElementCollection
+        List<String> ingredients = new ArrayList<>();
+        
+        @ElementCollection
+        @OrderColumn
+        List<String> steps = new ArrayList<>();
+        
+        @ManyToMany
+        Set<Tag> tags = new HashSet<>();
+        
+        Recipe() {
+        }
+        
+        Recipe(String name, List<String> steps) {
+            this.name = name;
+            this.steps.addAll(steps);
+        }
+        
+    }
+    
+    @Entity(name = "Tag")
+    public static class Tag {
+        
+        @Id
+        Long id;
+        
+        String name;
+        
+        Tag() {
+        }
+        
+        Tag(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+    }
+    
+}
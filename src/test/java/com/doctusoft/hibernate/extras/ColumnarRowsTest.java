@@ -0,0 +1,74 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.ColumnarRows.DoubleColumn;
+import com.doctusoft.hibernate.extras.ColumnarRows.IntColumn;
+import com.doctusoft.hibernate.extras.ColumnarRows.LongColumn;
+import org.hibernate.type.DoubleType;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.LongType;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class ColumnarRowsTest {
+    
+    @Test
+    public void intColumnAcceptsTheLongsInRange() {
+        IntColumn column = (IntColumn) ColumnarRows.Column.create(IntegerType.INSTANCE, 3);
+        column.setLong(0, 42L);
+        column.setObject(1, 43L);
+        column.setObject(2, (short) 44);
+        assertThat(column.values[0], is(42));
+        assertThat(column.values[1], is(43));
+        assertThat(column.values[2], is(44));
+        assertThat(column.isNull(0), is(false));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void intColumnRejectsTheLongsOutOfRange() {
+        ColumnarRows.Column.create(IntegerType.INSTANCE, 1).setLong(0, Integer.MAX_VALUE + 1L);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void intColumnRejectsFractions() {
+        ColumnarRows.Column.create(IntegerType.INSTANCE, 1).setObject(0, 1.5);
+    }
+    
+    @Test
+    public void longColumnAcceptsIntegers() {
+        LongColumn column = (LongColumn) ColumnarRows.Column.create(LongType.INSTANCE, 2);
+        column.setObject(0, 42);
+        column.setInt(1, 43);
+        assertThat(column.values[0], is(42L));
+        assertThat(column.values[1], is(43L));
+    }
+    
+    @Test
+    public void doubleColumnAcceptsAnyNumber() {
+        DoubleColumn column = (DoubleColumn) ColumnarRows.Column.create(DoubleType.INSTANCE, 2);
+        column.setObject(0, 42);
+        column.setObject(1, 1.5f);
+        assertThat(column.values[0], is(42.0));
+        assertThat(column.values[1], is(1.5));
+    }
+    
+    @Test
+    public void nonNumbersAreRejectedWithTheColumnType() {
+        try {
+            ColumnarRows.Column.create(LongType.INSTANCE, 1).setObject(0, "42");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), containsString("BIGINT"));
+        }
+    }
+    
+    @Test
+    public void nullClearsTheValue() {
+        ColumnarRows.Column column = ColumnarRows.Column.create(LongType.INSTANCE, 1);
+        column.setLong(0, 42L);
+        column.setObject(0, null);
+        assertThat(column.isNull(0), is(true));
+    }
+    
+}
@@ -0,0 +1,113 @@
+package com.doctusoft.hibernate.extras;
+
+import com.google.common.collect.ImmutableMap;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.boot.MetadataSources;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// the session factories of the integration tests, each on its own in-memory H2 database created from the mappings
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class H2SessionFactories {
+    
+    static SessionFactory create(Class<?>... annotatedClasses) {
+        return create(ImmutableMap.of(), annotatedClasses);
+    }
+    
+    static SessionFactory create(Map<String, ?> settings, Class<?>... annotatedClasses) {
+        return create(settings, metadataSources -> {
+            for (Class<?> annotatedClass : annotatedClasses) {
+                metadataSources.addAnnotatedClass(annotatedClass);
+            }
+        });
+    }
+    
+    // for the mappings that can not be expressed with annotations, e.g. the hbm.xml resources
+    static SessionFactory create(Map<String, ?> settings, Consumer<MetadataSources> mappings) {
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder()
+            .applySetting(AvailableSettings.DIALECT, H2Dialect.class.getName())
+            .applySetting(AvailableSettings.URL, "jdbc:h2:mem:test" + DATABASES.incrementAndGet())
+            .applySetting(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+            .applySettings(settings)
+            .build();
+        MetadataSources metadataSources = new MetadataSources(serviceRegistry);
+        mappings.accept(metadataSources);
+        return metadataSources.buildMetadata().buildSessionFactory();
+    }
+    
+    static void inTransaction(SessionFactory sessionFactory, Consumer<Session> work) {
+        fromTransaction(sessionFactory, session -> {
+            work.accept(session);
+            return null;
+        });
+    }
+    
+    // commits the transaction if work completes normally, and rolls it back otherwise
+    static <T> T fromTransaction(SessionFactory sessionFactory, Function<Session, T> work) {
+        try (Session session = sessionFactory.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                T result = work.apply(session);
+                transaction.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+    
+    static long count(Session session, Class<?> entityClass) {
+        CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
+        CriteriaQuery<Long> query = criteriaBuilder.createQuery(Long.class);
+        query.select(criteriaBuilder.count(query.from(entityClass)));
+        return session.createQuery(query).getSingleResult();
+    }
+    
+    // set as hibernate.session_factory.statement_inspector, records the sql of the prepared statements
+    static class RecordingStatementInspector implements StatementInspector {
+        
+        private final List<String> statements = new CopyOnWriteArrayList<>();
+        
+        @Override
+        public String inspect(String sql) {
+            statements.add(sql);
+            return sql;
+        }
+        
+        List<String> statementsStartingWith(String prefix) {
+            return statements.stream()
+                .filter(sql -> sql.regionMatches(true, 0, prefix, 0, prefix.length()))
+                .collect(Collectors.toList());
+        }
+        
+        void clear() {
+            statements.clear();
+        }
+        
+        private static final long serialVersionUID = 1L;
+        
+    }
+    
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    
+}
@@ -0,0 +1,139 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.annotations.ColumnTransformer;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Inheritance;
+import javax.persistence.InheritanceType;
+import javax.persistence.SequenceGenerator;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class HierarchyInsertTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            Animal.class,
+            Dog.class,
+            Cat.class);
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void mixedSubclassesAreInsertedInOneStatement() {
+        HibernateMultiLineHierarchyInsert hierarchyInsert = lookupHierarchyInsert();
+        assertThat(hierarchyInsert, notNullValue());
+        Animal[] animals = new Animal[12];
+        for (int i = 0; i < animals.length; ++i) {
+            animals[i] = i % 3 == 0 ? new Cat("cat" + i, 9 - i / 3) : new Dog("dog" + i, "rex" + i);
+        }
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> hierarchyInsert.insertInBatch(session, animals));
+        
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(1));
+        inTransaction(sessionFactory, session -> {
+            assertThat(count(session, Dog.class), is(8L));
+            assertThat(count(session, Cat.class), is(4L));
+            for (Animal animal : animals) {
+                Animal loaded = session.get(Animal.class, animal.id);
+                assertThat(loaded, instanceOf(animal.getClass()));
+                assertThat(loaded.name, is(animal.name));
+                if (animal instanceof Cat) {
+                    assertThat(((Cat) loaded).lives, is(((Cat) animal).lives));
+                }
+            }
+        });
+    }
+    
+    @Test
+    public void columnWriteExpressionsAreApplied() {
+        HibernateMultiLineHierarchyInsert hierarchyInsert = lookupHierarchyInsert();
+        Animal[] animals = { new Dog("dog", "rex"), new Cat("cat", 9) };
+        
+        inTransaction(sessionFactory, session -> hierarchyInsert.insertInBatch(session, animals));
+        
+        inTransaction(sessionFactory, session -> {
+            Object nickname = session.createNativeQuery("select nickname from Animal where id = :id")
+                .setParameter("id", animals[0].id)
+                .getSingleResult();
+            assertThat(nickname, is("REX"));
+        });
+    }
+    
+    private HibernateMultiLineHierarchyInsert lookupHierarchyInsert() {
+        EntityPersister persister = sessionFactory.unwrap(SessionFactoryImplementor.class)
+            .getMetamodel()
+            .entityPersister(Dog.class);
+        return HibernateMultiLineHierarchyInsert.lookup(persister);
+    }
+    
+    @Entity(name = "Animal")
+    @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
+    public abstract static class Animal {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "animal_seq")
+        @SequenceGenerator(name = "animal_seq", sequenceName = "animal_seq", allocationSize = 50)
+        Long id;
+        
+        String name;
+        
+    }
+    
+    @Entity(name = "Dog")
+    public static class Dog extends Animal {
+        
+        @ColumnTransformer(write = "upper(?)")
+        String nickname;
+        
+        Dog() {
+        }
+        
+        Dog(String name, String nickname) {
+            this.name = name;
+            this.nickname = nickname;
+        }
+        
+    }
+    
+    @Entity(name = "Cat")
+    public static class Cat extends Animal {
+        
+        Integer lives;
+        
+        Cat() {
+        }
+        
+        Cat(String name, Integer lives) {
+            this.name = name;
+            this.lives = lives;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,82 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import java.util.Arrays;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class IdentityIdInsertTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            IdentityItem.class);
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void generatedKeysOfAllTheLinesAreReadBack() {
+        HibernateMultiLineInsert multiLineInsert =
+            MultiLineInsertRegistry.create(sessionFactory).lookup(IdentityItem.class);
+        assertThat(multiLineInsert, notNullValue());
+        assertThat(multiLineInsert.isIdentityInsert(), is(true));
+        IdentityItem[] items = new IdentityItem[25];
+        for (int i = 0; i < items.length; ++i) {
+            items[i] = new IdentityItem("item" + i);
+        }
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> multiLineInsert.insertInBatch(session, items));
+        
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(1));
+        assertThat(Arrays.stream(items).map(item -> item.id).distinct().count(), is(25L));
+        inTransaction(sessionFactory, session -> {
+            assertThat(count(session, IdentityItem.class), is(25L));
+            // the keys are assigned in the order of the value lines
+            for (IdentityItem item : items) {
+                assertThat(session.get(IdentityItem.class, item.id).name, is(item.name));
+            }
+        });
+    }
+    
+    @Entity
+    public static class IdentityItem {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.IDENTITY)
+        Long id;
+        
+        String name;
+        
+        IdentityItem() {
+        }
+        
+        IdentityItem(String name) {
+            this.name = name;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,133 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class IsolatingFailuresInsertTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            Member.class);
+        inTransaction(sessionFactory, session -> {
+            session.persist(new Member("member5"));
+            session.persist(new Member("member12"));
+        });
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void failingRowsAreIsolatedByBisection() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory).lookup(Member.class);
+        Member[] members = new Member[16];
+        for (int i = 0; i < members.length; ++i) {
+            members[i] = new Member("member" + i);
+        }
+        statementInspector.clear();
+        
+        List<FailedInsert> failures = fromTransaction(sessionFactory,
+            session -> multiLineInsert.insertIsolatingFailures(session, members));
+        
+        assertThat(failures.stream().map(FailedInsert::getIndex).collect(Collectors.toList()), contains(5, 12));
+        for (FailedInsert failure : failures) {
+            assertThat(failure.getEntity(), sameInstance(members[failure.getIndex()]));
+            assertThat(failure.getException(), instanceOf(ConstraintViolationException.class));
+            // the generated id was reset, so the entity may be persisted again
+            assertThat(((Member) failure.getEntity()).id, nullValue());
+        }
+        // 16, 8 + 8, 4 + 4 + 4 + 4, then 2 + 2 and 1 + 1 in both failing quarters
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(15));
+        inTransaction(sessionFactory, session -> {
+            assertThat(count(session, Member.class), is(16L));
+            for (int i = 0; i < members.length; ++i) {
+                if (i != 5 && i != 12) {
+                    assertThat(session.get(Member.class, members[i].id).email, is("member" + i));
+                }
+            }
+        });
+    }
+    
+    @Test
+    public void connectionsReleasedAfterEachStatementAreRejected() {
+        sessionFactory.close();
+        // otherwise Hibernate holds the connection until the end of the transaction anyway
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(
+                AvailableSettings.CONNECTION_PROVIDER, new AggressivelyReleasedConnectionProvider(),
+                AvailableSettings.CONNECTION_HANDLING,
+                PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_STATEMENT),
+            Member.class);
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory).lookup(Member.class);
+        try (Session session = sessionFactory.openSession()) {
+            
+            multiLineInsert.insertIsolatingFailures(session, new Object[] { new Member("member") });
+            fail();
+        } catch (HibernateException e) {
+            assertThat(e.getMessage(), containsString("released after each statement"));
+        }
+    }
+    
+    public static class AggressivelyReleasedConnectionProvider extends DriverManagerConnectionProviderImpl {
+        
+        @Override
+        public boolean supportsAggressiveRelease() {
+            return true;
+        }
+        
+        private static final long serialVersionUID = 1L;
+        
+    }
+    
+    @Entity
+    public static class Member {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "member_seq")
+        @SequenceGenerator(name = "member_seq", sequenceName = "member_seq", allocationSize = 50)
+        Long id;
+        
+        @Column(unique = true)
+        String email;
+        
+        Member() {
+        }
+        
+        Member(String email) {
+            this.email = email;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,108 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Version;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class ManagedInsertTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            Account.class);
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void insertedEntitiesAreManaged() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory)
+            .lookup(Account.class)
+            .withManageEntities(true);
+        Account[] accounts = new Account[10];
+        for (int i = 0; i < accounts.length; ++i) {
+            accounts[i] = new Account("owner" + i);
+        }
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> {
+            multiLineInsert.insertInBatch(session, accounts);
+            
+            for (Account account : accounts) {
+                assertThat(session.contains(account), is(true));
+                assertThat(session.get(Account.class, account.id), sameInstance(account));
+            }
+            assertThat(statementInspector.statementsStartingWith("select"), empty());
+            // only the modified entity is dirty
+            accounts[0].owner = "renamed";
+        });
+        
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(1));
+        assertThat(statementInspector.statementsStartingWith("update"), hasSize(1));
+        inTransaction(sessionFactory, session -> {
+            Account renamed = session.get(Account.class, accounts[0].id);
+            assertThat(renamed.owner, is("renamed"));
+            assertThat(renamed.version, is(1));
+            assertThat(session.get(Account.class, accounts[1].id).version, is(0));
+        });
+    }
+    
+    @Test
+    public void unmanagedEntitiesAreDetached() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory).lookup(Account.class);
+        Account account = new Account("owner");
+        
+        inTransaction(sessionFactory, session -> {
+            multiLineInsert.insertInBatch(session, new Object[] { account });
+            assertThat(session.contains(account), is(false));
+        });
+        
+        inTransaction(sessionFactory, session -> assertThat(count(session, Account.class), is(1L)));
+    }
+    
+    @Entity
+    public static class Account {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "account_seq")
+        @SequenceGenerator(name = "account_seq", sequenceName = "account_seq", allocationSize = 50)
+        Long id;
+        
+        @Version
+        Integer version;
+        
+        String owner;
+        
+        Account() {
+        }
+        
+        Account(String owner) {
+            this.owner = owner;
+        }
+        
+    }
+    
+}
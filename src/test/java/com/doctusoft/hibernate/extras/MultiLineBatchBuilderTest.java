@@ -0,0 +1,124 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.batch.internal.BatchBuilderInitiator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MultiLineBatchBuilderTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(
+                AvailableSettings.STATEMENT_INSPECTOR, statementInspector,
+                BatchBuilderInitiator.BUILDER, MultiLineBatchBuilder.class.getName(),
+                AvailableSettings.STATEMENT_BATCH_SIZE, "50",
+                AvailableSettings.ORDER_INSERTS, "true"),
+            Product.class);
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void batchedInsertsAreSentAsOneMultiLineInsert() {
+        statementInspector.clear();
+        
+        List<Long> ids = fromTransaction(sessionFactory, session -> {
+            Long[] persisted = new Long[30];
+            for (int i = 0; i < persisted.length; ++i) {
+                Product product = new Product();
+                product.name = "product" + i;
+                // every other row binds nulls
+                product.price = i % 2 == 0 ? BigDecimal.valueOf(i, 2) : null;
+                product.released = i % 2 == 0 ? LocalDate.of(2017, 1, 1).plusDays(i) : null;
+                session.persist(product);
+                persisted[i] = product.id;
+            }
+            return Arrays.asList(persisted);
+        });
+        
+        List<String> inserts = statementInspector.statementsStartingWith("insert");
+        assertThat(inserts, hasSize(1));
+        assertThat(inserts.get(0).split("\\)\\s*,\\s*\\(").length, is(30));
+        inTransaction(sessionFactory, session -> {
+            assertThat(count(session, Product.class), is(30L));
+            for (int i = 0; i < ids.size(); ++i) {
+                Product product = session.get(Product.class, ids.get(i));
+                assertThat(product.name, is("product" + i));
+                assertThat(product.price, is(i % 2 == 0 ? BigDecimal.valueOf(i, 2) : null));
+                assertThat(product.released, is(i % 2 == 0 ? LocalDate.of(2017, 1, 1).plusDays(i) : null));
+            }
+        });
+    }
+    
+    @Test
+    public void batchedUpdatesAreExecutedTheOrdinaryWay() {
+        List<Long> ids = fromTransaction(sessionFactory, session -> {
+            Long[] persisted = new Long[10];
+            for (int i = 0; i < persisted.length; ++i) {
+                Product product = new Product();
+                product.name = "product" + i;
+                session.persist(product);
+                persisted[i] = product.id;
+            }
+            return Arrays.asList(persisted);
+        });
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> {
+            for (Long id : ids) {
+                session.get(Product.class, id).name += " renamed";
+            }
+        });
+        
+        assertThat(statementInspector.statementsStartingWith("update"), hasSize(1));
+        inTransaction(sessionFactory, session -> {
+            for (int i = 0; i < ids.size(); ++i) {
+                assertThat(session.get(Product.class, ids.get(i)).name, is("product" + i + " renamed"));
+            }
+        });
+    }
+    
+    @Entity
+    public static class Product {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "product_seq")
+        @SequenceGenerator(name = "product_seq", sequenceName = "product_seq", allocationSize = 50)
+        Long id;
+        
+        String name;
+        
+        BigDecimal price;
+        
+        LocalDate released;
+        
+    }
+    
+}
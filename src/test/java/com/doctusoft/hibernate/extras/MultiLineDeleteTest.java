@@ -0,0 +1,185 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.ElementCollection;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Inheritance;
+import javax.persistence.InheritanceType;
+import javax.persistence.Version;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MultiLineDeleteTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            Ticket.class,
+            Document.class,
+            Invoice.class,
+            Folder.class);
+        inTransaction(sessionFactory, session -> {
+            for (long id = 1; id <= 10; ++id) {
+                session.persist(new Ticket(id, "ticket" + id));
+                session.persist(new Invoice(id, "document" + id, id * 100));
+            }
+        });
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void managedEntitiesAreDeletedInOneStatement() {
+        HibernateMultiLineDelete multiLineDelete = lookup(Ticket.class);
+        assertThat(multiLineDelete, notNullValue());
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> {
+            List<Ticket> tickets = session.createQuery("from Ticket where id <= 8", Ticket.class).list();
+            multiLineDelete.deleteInBatch(session, tickets.toArray());
+            for (Ticket ticket : tickets) {
+                assertThat(session.contains(ticket), is(false));
+            }
+        });
+        
+        assertThat(statementInspector.statementsStartingWith("delete"), hasSize(1));
+        inTransaction(sessionFactory, session -> assertThat(count(session, Ticket.class), is(2L)));
+    }
+    
+    @Test
+    public void detachedEntitiesAreDeletedWithTheirVersions() {
+        HibernateMultiLineDelete multiLineDelete = lookup(Ticket.class);
+        List<Ticket> tickets = fromTransaction(sessionFactory,
+            session -> session.createQuery("from Ticket", Ticket.class).list());
+        
+        inTransaction(sessionFactory, session -> multiLineDelete.deleteInBatch(session, tickets.toArray()));
+        
+        inTransaction(sessionFactory, session -> assertThat(count(session, Ticket.class), is(0L)));
+    }
+    
+    @Test
+    public void staleVersionsAreRejected() {
+        HibernateMultiLineDelete multiLineDelete = lookup(Ticket.class);
+        List<Ticket> tickets = fromTransaction(sessionFactory,
+            session -> session.createQuery("from Ticket", Ticket.class).list());
+        inTransaction(sessionFactory, session -> session.get(Ticket.class, 7L).subject = "concurrent");
+        
+        try {
+            inTransaction(sessionFactory, session -> multiLineDelete.deleteInBatch(session, tickets.toArray()));
+            fail();
+        } catch (StaleStateException e) {
+            // the concurrently updated row was not deleted
+        }
+        inTransaction(sessionFactory, session -> assertThat(count(session, Ticket.class), is(10L)));
+    }
+    
+    @Test
+    public void joinedSubclassesAreDeletedWithOneStatementPerTable() {
+        HibernateMultiLineDelete multiLineDelete = lookup(Invoice.class);
+        assertThat(multiLineDelete, notNullValue());
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> multiLineDelete.deleteInBatch(session,
+            session.createQuery("from Invoice", Invoice.class).list().toArray()));
+        
+        List<String> deletes = statementInspector.statementsStartingWith("delete");
+        assertThat(deletes, hasSize(2));
+        // the subclass table first, the root table last
+        assertThat(deletes.get(0), startsWith("delete from Invoice "));
+        assertThat(deletes.get(1), startsWith("delete from Document "));
+        inTransaction(sessionFactory, session -> assertThat(count(session, Document.class), is(0L)));
+    }
+    
+    @Test
+    public void entitiesWithCollectionsAreNotSupported() {
+        assertThat(lookup(Folder.class), nullValue());
+    }
+    
+    private HibernateMultiLineDelete lookup(Class<?> entityClass) {
+        return HibernateMultiLineDelete.lookup(sessionFactory.unwrap(SessionFactoryImplementor.class)
+            .getMetamodel()
+            .entityPersister(entityClass));
+    }
+    
+    @Entity(name = "Ticket")
+    public static class Ticket {
+        
+        @Id
+        Long id;
+        
+        @Version
+        Integer version;
+        
+        String subject;
+        
+        Ticket() {
+        }
+        
+        Ticket(Long id, String subject) {
+            this.id = id;
+            this.subject = subject;
+        }
+        
+    }
+    
+    @Entity(name = "Document")
+    @Inheritance(strategy = InheritanceType.JOINED)
+    public static class Document {
+        
+        @Id
+        Long id;
+        
+        String title;
+        
+    }
+    
+    @Entity(name = "Invoice")
+    public static class Invoice extends Document {
+        
+        long amount;
+        
+        Invoice() {
+        }
+        
+        Invoice(Long id, String title, long amount) {
+            this.id = id;
+            this.title = title;
+            this.amount = amount;
+        }
+        
+    }
+    
+    @Entity(name = "Folder")
+    public static class Folder {
+        
+        @Id
+        Long id;
+        
+        @ElementCollection
+        List<String> tags = new ArrayList<>();
+        
+    }
+    
+}
@@ -0,0 +1,98 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MultiLineInsertIntegratorTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(
+                AvailableSettings.STATEMENT_INSPECTOR, statementInspector,
+                AvailableSettings.GENERATE_STATISTICS, "true",
+                MultiLineInsertIntegrator.ENABLED, "true"),
+            Purchase.class);
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void queuedInsertionsAreFlushedAsOneMultiLineInsert() {
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> {
+            for (int i = 0; i < 20; ++i) {
+                session.persist(new Purchase("purchase" + i));
+            }
+            session.flush();
+            
+            assertThat(statementInspector.statementsStartingWith("insert"), hasSize(1));
+            // the inserted entities are managed like the ones inserted by the ActionQueue
+            for (Purchase purchase : session.createQuery("from Purchase", Purchase.class).list()) {
+                purchase.customer += " updated";
+            }
+        });
+        
+        assertThat(sessionFactory.getStatistics().getEntityInsertCount(), is(20L));
+        inTransaction(sessionFactory, session -> {
+            assertThat(count(session, Purchase.class), is(20L));
+            for (Purchase purchase : session.createQuery("from Purchase", Purchase.class).list()) {
+                assertThat(purchase.customer, endsWith(" updated"));
+            }
+        });
+    }
+    
+    @Test
+    public void singleInsertionsAreExecutedTheHibernateWay() {
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> session.persist(new Purchase("single")));
+        
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(1));
+        assertThat(sessionFactory.getStatistics().getEntityInsertCount(), is(1L));
+        inTransaction(sessionFactory, session -> assertThat(count(session, Purchase.class), is(1L)));
+    }
+    
+    @Entity(name = "Purchase")
+    public static class Purchase {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "purchase_seq")
+        @SequenceGenerator(name = "purchase_seq", sequenceName = "purchase_seq", allocationSize = 50)
+        Long id;
+        
+        String customer;
+        
+        Purchase() {
+        }
+        
+        Purchase(String customer) {
+            this.customer = customer;
+        }
+        
+    }
+    
+}
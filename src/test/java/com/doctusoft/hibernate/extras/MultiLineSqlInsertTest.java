@@ -0,0 +1,83 @@
+package com.doctusoft.hibernate.extras;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MultiLineSqlInsertTest {
+    
+    @Test
+    public void multiLineInsertRepeatsTheValuesPart() {
+        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse("insert into t (a, b) values (?, ?)");
+        assertThat(sqlInsert.getMultiLineInsertString(1), is("insert into t (a, b) values (?, ?)"));
+        assertThat(sqlInsert.getMultiLineInsertString(3), is("insert into t (a, b) values (?, ?), (?, ?), (?, ?)"));
+    }
+    
+    @Test
+    public void unknownInsertSyntaxIsNotParsed() {
+        assertThat(MultiLineSqlInsert.tryParse(null), is(nullValue()));
+        assertThat(MultiLineSqlInsert.tryParse("{call insert_t(?, ?)}"), is(nullValue()));
+        assertThat(MultiLineSqlInsert.tryParse("insert into t values (?) values (?)"), is(nullValue()));
+    }
+    
+    @Test
+    public void nullPlaceholdersAreReplacedByDefault() {
+        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse("insert into t (a, b, c) values (?, ?, ?)");
+        assertThat(sqlInsert.getPlainPlaceholderCount(), is(3));
+        String sql = sqlInsert.getMultiLineInsertString(Arrays.asList(bits(), bits(1), bits(0, 2)));
+        assertThat(sql, is("insert into t (a, b, c) values (?, ?, ?), (?, DEFAULT, ?), (DEFAULT, ?, DEFAULT)"));
+    }
+    
+    @Test
+    public void quotedQuestionMarksAreNoPlaceholders() {
+        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse("insert into t (a, b, c) values ('?', ?, ?)");
+        assertThat(sqlInsert.getPlainPlaceholderCount(), is(2));
+        String sql = sqlInsert.getMultiLineInsertString(Collections.singletonList(bits(0)));
+        assertThat(sql, is("insert into t (a, b, c) values ('?', DEFAULT, ?)"));
+    }
+    
+    @Test
+    public void placeholdersOfMultiColumnPropertiesAreReplacedTogether() {
+        // b and c are the two columns of one property, the id is bound last
+        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse("insert into t (a, b, c, id) values (?, ?, ?, ?)");
+        HibernateMultiLineInsert.InsertShape shape = new HibernateMultiLineInsert.InsertShape(
+            new boolean[] { true, true },
+            new MultiLineSqlInsert[] { sqlInsert },
+            new int[] { 4 },
+            new int[][] { { 0, 1, 1, -1 } },
+            true);
+        BitSet defaultPlaceholders = shape.getDefaultPlaceholders(0, new Object[] { "a", null });
+        assertThat(defaultPlaceholders, is(bits(1, 2)));
+        assertThat(shape.getDefaultPlaceholders(0, new Object[] { null, null }), is(bits(0, 1, 2)));
+        assertThat(
+            sqlInsert.getMultiLineInsertString(Collections.singletonList(defaultPlaceholders)),
+            is("insert into t (a, b, c, id) values (?, DEFAULT, DEFAULT, ?)"));
+        assertThat(shape.getBoundProperties(new Object[] { "a", null }), is(new boolean[] { true, false }));
+    }
+    
+    @Test
+    public void placeholdersInColumnWriteExpressionsCannotBeReplaced() {
+        MultiLineSqlInsert sqlInsert = MultiLineSqlInsert.tryParse("insert into t (a, b) values (upper(?), ?)");
+        assertThat(sqlInsert.getPlainPlaceholderCount(), is(-1));
+        assertThat(MultiLineSqlInsert.tryParse("insert into t (a) values (? + 1)").getPlainPlaceholderCount(), is(-1));
+        try {
+            sqlInsert.getMultiLineInsertString(Collections.singletonList(bits(1)));
+            fail("DEFAULT was written into an sql expression");
+        } catch (IllegalStateException expected) {
+        }
+    }
+    
+    private static BitSet bits(int... indexes) {
+        BitSet bits = new BitSet();
+        for (int index : indexes) {
+            bits.set(index);
+        }
+        return bits;
+    }
+    
+}
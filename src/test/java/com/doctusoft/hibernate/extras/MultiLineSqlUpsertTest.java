@@ -0,0 +1,112 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.HibernateMultiLineInsert.EntityPersisterSpy;
+import com.doctusoft.hibernate.extras.MultiLineSqlUpsert.ConflictAction;
+import org.hibernate.SessionFactory;
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.dialect.MySQL57Dialect;
+import org.hibernate.dialect.PostgreSQL95Dialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.junit.Test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MultiLineSqlUpsertTest {
+    
+    static final String INSERT = "insert into t (a, b, id) values (?, ?, ?),(?, ?, ?)";
+    static final String[] KEY = { "id" };
+    static final String[] COLUMNS = { "a", "b" };
+    
+    @Test
+    public void postgreSqlIgnoresTheConflicts() {
+        MultiLineSqlUpsert upsert =
+            MultiLineSqlUpsert.forDialect(new PostgreSQL95Dialect(), ConflictAction.IGNORE, KEY, COLUMNS);
+        assertThat(upsert.toUpsertString(INSERT), is(INSERT + " on conflict (id) do nothing"));
+        assertThat(upsert.isReturningInsertedFlags(), is(false));
+        assertThat(upsert.countRows(2, 1), is(UpsertResult.of(1, 0, 1)));
+    }
+    
+    @Test
+    public void postgreSqlUpdatesTheConflictsReturningTheInsertedFlags() {
+        MultiLineSqlUpsert upsert =
+            MultiLineSqlUpsert.forDialect(new PostgreSQL95Dialect(), ConflictAction.UPDATE, KEY, COLUMNS);
+        assertThat(upsert.toUpsertString(INSERT), is(INSERT
+            + " on conflict (id) do update set a = excluded.a, b = excluded.b returning (xmax = 0)"));
+        assertThat(upsert.isReturningInsertedFlags(), is(true));
+    }
+    
+    @Test
+    public void mySqlIgnoresTheConflictsWithInsertIgnore() {
+        MultiLineSqlUpsert upsert =
+            MultiLineSqlUpsert.forDialect(new MySQL57Dialect(), ConflictAction.IGNORE, KEY, COLUMNS);
+        assertThat(upsert.toUpsertString(INSERT), is("insert ignore into t (a, b, id) values (?, ?, ?),(?, ?, ?)"));
+        assertThat(
+            upsert.toUpsertString("/* insert T */ " + INSERT),
+            is("/* insert T */ insert ignore into t (a, b, id) values (?, ?, ?),(?, ?, ?)"));
+        assertThat(upsert.countRows(5, 3), is(UpsertResult.of(3, 0, 2)));
+    }
+    
+    @Test
+    public void mySqlUpdatesTheConflictsCountingTwoForEachUpdatedRow() {
+        MultiLineSqlUpsert upsert =
+            MultiLineSqlUpsert.forDialect(new MySQL57Dialect(), ConflictAction.UPDATE, KEY, COLUMNS);
+        assertThat(upsert.toUpsertString(INSERT),
+            is(INSERT + " on duplicate key update a = values(a), b = values(b)"));
+        assertThat(upsert.countRows(5, 5), is(UpsertResult.of(5, 0, 0)));
+        assertThat(upsert.countRows(5, 7), is(UpsertResult.of(3, 2, 0)));
+        assertThat(upsert.countRows(5, 10), is(UpsertResult.of(0, 5, 0)));
+    }
+    
+    @Test
+    public void keyOnlyTablesGetANoOpAssignment() {
+        MultiLineSqlUpsert upsert =
+            MultiLineSqlUpsert.forDialect(new MySQL57Dialect(), ConflictAction.UPDATE, KEY, new String[0]);
+        assertThat(upsert.toUpsertString(INSERT), endsWith(" on duplicate key update id = values(id)"));
+    }
+    
+    @Test
+    public void onlyTheInsertableAndUpdatableColumnsOfAnEntityAreUpdated() {
+        SessionFactory sessionFactory = H2SessionFactories.create(Subscriber.class);
+        try {
+            EntityPersister persister = sessionFactory.unwrap(SessionFactoryImplementor.class)
+                .getMetamodel()
+                .entityPersister(Subscriber.class);
+            String[] updatedColumnNames = EntityPersisterSpy.spyOn(persister)
+                .getUpsertUpdateColumnNames(persister.getPropertyInsertability(), 0);
+            MultiLineSqlUpsert upsert =
+                MultiLineSqlUpsert.forDialect(new MySQL57Dialect(), ConflictAction.UPDATE, KEY, updatedColumnNames);
+            assertThat(upsert.toUpsertString(INSERT), endsWith(" on duplicate key update email = values(email)"));
+        } finally {
+            sessionFactory.close();
+        }
+    }
+    
+    @Test
+    public void dialectsWithoutMultiLineUpsertAreNotSupported() {
+        MultiLineSqlUpsert upsert = MultiLineSqlUpsert.forDialect(new H2Dialect(), ConflictAction.IGNORE, KEY, COLUMNS);
+        assertThat(upsert, is(nullValue()));
+    }
+    
+    @Entity
+    public static class Subscriber {
+        
+        @Id
+        Long id;
+        
+        String email;
+        
+        @Column(updatable = false)
+        String source;
+        
+        @Column(insertable = false)
+        String confirmedEmail;
+        
+    }
+    
+}
@@ -0,0 +1,236 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.JDBCException;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.StaleStateException;
+import org.hibernate.annotations.Immutable;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Version;
+import java.util.List;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MultiLineUpdateTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            metadataSources -> metadataSources
+                .addAnnotatedClass(Task.class)
+                .addAnnotatedClass(Label.class)
+                .addResource("com/doctusoft/hibernate/extras/Note.hbm.xml"));
+        inTransaction(sessionFactory, session -> {
+            for (long id = 1; id <= 10; ++id) {
+                session.persist(new Task(id, "task" + id));
+                session.persist(new Note(id, "note" + id));
+            }
+            session.persist(new Label(1L, "label"));
+        });
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void managedEntitiesAreUpdatedInOneStatement() {
+        HibernateMultiLineUpdate multiLineUpdate = lookup(Task.class);
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> {
+            List<Task> tasks = session.createQuery("from Task order by id", Task.class).list();
+            tasks.forEach(task -> task.title += " done");
+            multiLineUpdate.updateInBatch(session, tasks.toArray());
+            for (Task task : tasks) {
+                assertThat(task.version, is(1));
+            }
+        });
+        
+        // the snapshots were refreshed, so the flush found nothing dirty
+        assertThat(statementInspector.statementsStartingWith("update"), hasSize(1));
+        inTransaction(sessionFactory, session -> {
+            for (Task task : session.createQuery("from Task", Task.class).list()) {
+                assertThat(task.title, is("task" + task.id + " done"));
+                assertThat(task.version, is(1));
+            }
+        });
+    }
+    
+    @Test
+    public void detachedEntitiesAreUpdated() {
+        HibernateMultiLineUpdate multiLineUpdate = lookup(Task.class);
+        List<Task> tasks = fromTransaction(sessionFactory,
+            session -> session.createQuery("from Task order by id", Task.class).list());
+        tasks.forEach(task -> task.title += " detached");
+        
+        inTransaction(sessionFactory, session -> multiLineUpdate.updateInBatch(session, tasks.toArray()));
+        
+        for (Task task : tasks) {
+            assertThat(task.version, is(1));
+        }
+        inTransaction(sessionFactory, session -> {
+            for (Task task : session.createQuery("from Task", Task.class).list()) {
+                assertThat(task.title, endsWith(" detached"));
+            }
+        });
+    }
+    
+    @Test
+    public void deletedRowsAreRejectedAsStale() {
+        HibernateMultiLineUpdate multiLineUpdate = lookup(Task.class);
+        List<Task> tasks = fromTransaction(sessionFactory,
+            session -> session.createQuery("from Task order by id", Task.class).list());
+        inTransaction(sessionFactory, session -> session.delete(session.get(Task.class, 7L)));
+        
+        try {
+            inTransaction(sessionFactory, session -> multiLineUpdate.updateInBatch(session, tasks.toArray()));
+            fail();
+        } catch (StaleObjectStateException e) {
+            assertThat(e.getIdentifier(), is(7L));
+        }
+        inTransaction(sessionFactory, session -> assertThat(session.get(Task.class, 8L).version, is(0)));
+    }
+    
+    @Test
+    public void concurrentUpdatesAreRejected() {
+        HibernateMultiLineUpdate multiLineUpdate = lookup(Task.class);
+        List<Task> tasks = fromTransaction(sessionFactory,
+            session -> session.createQuery("from Task order by id", Task.class).list());
+        inTransaction(sessionFactory, session -> session.get(Task.class, 7L).title = "concurrent");
+        
+        try {
+            inTransaction(sessionFactory, session -> multiLineUpdate.updateInBatch(session, tasks.toArray()));
+            fail();
+        } catch (StaleStateException e) {
+            // the concurrent update wrote the same next version, so only the row count tells it apart
+        }
+        inTransaction(sessionFactory, session -> assertThat(session.get(Task.class, 7L).title, is("concurrent")));
+    }
+    
+    @Test
+    public void versionsAreIncrementedWithoutOptimisticLocking() {
+        HibernateMultiLineUpdate multiLineUpdate = lookup(Note.class);
+        assertThat(multiLineUpdate.getVersionColumnName(), nullValue());
+        List<Note> notes = fromTransaction(sessionFactory,
+            session -> session.createQuery("from Note order by id", Note.class).list());
+        inTransaction(sessionFactory, session -> session.get(Note.class, 7L).text = "concurrent");
+        notes.forEach(note -> note.text += " updated");
+        
+        inTransaction(sessionFactory, session -> multiLineUpdate.updateInBatch(session, notes.toArray()));
+        
+        for (Note note : notes) {
+            assertThat(note.version, is(1));
+        }
+        inTransaction(sessionFactory, session -> {
+            // the concurrent update is overwritten, as there is no version check
+            assertThat(session.get(Note.class, 7L).text, is("note7 updated"));
+            assertThat(session.get(Note.class, 8L).version, is(1));
+        });
+    }
+    
+    @Test
+    public void sqlExceptionsAreConverted() {
+        HibernateMultiLineUpdate multiLineUpdate = lookup(Task.class);
+        List<Task> tasks = fromTransaction(sessionFactory,
+            session -> session.createQuery("from Task order by id", Task.class).list());
+        tasks.get(3).title = null;
+        
+        try {
+            inTransaction(sessionFactory, session -> multiLineUpdate.updateInBatch(session, tasks.toArray()));
+            fail();
+        } catch (JDBCException e) {
+            assertThat(e.getSQLException(), notNullValue());
+        }
+    }
+    
+    @Test
+    public void immutableEntitiesAreNotSupported() {
+        assertThat(lookup(Label.class), nullValue());
+    }
+    
+    private HibernateMultiLineUpdate lookup(Class<?> entityClass) {
+        return HibernateMultiLineUpdate.lookup(sessionFactory.unwrap(SessionFactoryImplementor.class)
+            .getMetamodel()
+            .entityPersister(entityClass));
+    }
+    
+    @Entity(name = "Task")
+    public static class Task {
+        
+        @Id
+        Long id;
+        
+        @Version
+        Integer version;
+        
+        @Column(nullable = false)
+        String title;
+        
+        Task() {
+        }
+        
+        Task(Long id, String title) {
+            this.id = id;
+            this.title = title;
+        }
+        
+    }
+    
+    // mapped by Note.hbm.xml
+    public static class Note {
+        
+        Long id;
+        
+        Integer version;
+        
+        String text;
+        
+        Note() {
+        }
+        
+        Note(Long id, String text) {
+            this.id = id;
+            this.text = text;
+        }
+        
+    }
+    
+    @Entity(name = "Label")
+    @Immutable
+    public static class Label {
+        
+        @Id
+        Long id;
+        
+        String name;
+        
+        Label() {
+        }
+        
+        Label(Long id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+        
+    }
+    
+}
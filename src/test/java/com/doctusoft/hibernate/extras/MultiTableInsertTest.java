@@ -0,0 +1,144 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Inheritance;
+import javax.persistence.InheritanceType;
+import javax.persistence.SecondaryTable;
+import javax.persistence.SequenceGenerator;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class MultiTableInsertTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            Vehicle.class,
+            Car.class,
+            Person.class);
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void joinedSubclassesAreInsertedWithOneStatementPerTable() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory).lookup(Car.class);
+        assertThat(multiLineInsert, notNullValue());
+        Car[] cars = new Car[15];
+        for (int i = 0; i < cars.length; ++i) {
+            cars[i] = new Car("maker" + i, i % 5 + 1);
+        }
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> multiLineInsert.insertInBatch(session, cars));
+        
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(2));
+        inTransaction(sessionFactory, session -> {
+            assertThat(count(session, Car.class), is(15L));
+            for (Car car : cars) {
+                Car loaded = session.get(Car.class, car.id);
+                assertThat(loaded.maker, is(car.maker));
+                assertThat(loaded.doors, is(car.doors));
+            }
+        });
+    }
+    
+    @Test
+    public void secondaryTableRowsAreOmittedForAllNullProperties() {
+        HibernateMultiLineInsert multiLineInsert = MultiLineInsertRegistry.create(sessionFactory).lookup(Person.class);
+        assertThat(multiLineInsert, notNullValue());
+        Person[] persons = new Person[10];
+        for (int i = 0; i < persons.length; ++i) {
+            persons[i] = new Person("person" + i, i % 2 == 0 ? "city" + i : null);
+        }
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> multiLineInsert.insertInBatch(session, persons));
+        
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(2));
+        inTransaction(sessionFactory, session -> {
+            Number addressRows = (Number) session.createNativeQuery("select count(*) from address").getSingleResult();
+            assertThat(addressRows.intValue(), is(5));
+            for (Person person : persons) {
+                Person loaded = session.get(Person.class, person.id);
+                assertThat(loaded.name, is(person.name));
+                assertThat(loaded.city, is(person.city));
+            }
+        });
+    }
+    
+    @Entity
+    @Inheritance(strategy = InheritanceType.JOINED)
+    public static class Vehicle {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vehicle_seq")
+        @SequenceGenerator(name = "vehicle_seq", sequenceName = "vehicle_seq", allocationSize = 50)
+        Long id;
+        
+        String maker;
+        
+    }
+    
+    @Entity
+    public static class Car extends Vehicle {
+        
+        int doors;
+        
+        Car() {
+        }
+        
+        Car(String maker, int doors) {
+            this.maker = maker;
+            this.doors = doors;
+        }
+        
+    }
+    
+    @Entity
+    @SecondaryTable(name = "address")
+    public static class Person {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "person_seq")
+        @SequenceGenerator(name = "person_seq", sequenceName = "person_seq", allocationSize = 50)
+        Long id;
+        
+        String name;
+        
+        @Column(table = "address")
+        String city;
+        
+        Person() {
+        }
+        
+        Person(String name, String city) {
+            this.name = name;
+            this.city = city;
+        }
+        
+    }
+    
+}
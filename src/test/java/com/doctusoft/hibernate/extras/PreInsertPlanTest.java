@@ -0,0 +1,30 @@
+package com.doctusoft.hibernate.extras;
+
+import org.hibernate.tuple.CreationTimestampGeneration;
+import org.hibernate.tuple.ValueGenerator;
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class PreInsertPlanTest {
+    
+    @Test
+    public void timestampGeneratorsAreOwnerIndependent() {
+        for (Class<?> propertyType : new Class<?>[] { Date.class, Timestamp.class }) {
+            CreationTimestampGeneration generation = new CreationTimestampGeneration();
+            generation.initialize(null, propertyType);
+            assertThat(PreInsertPlan.isOwnerIndependent(generation.getValueGenerator()), is(true));
+        }
+    }
+    
+    @Test
+    public void otherGeneratorsAreNotOwnerIndependent() {
+        ValueGenerator<String> generator = (session, owner) -> "generated";
+        assertThat(PreInsertPlan.isOwnerIndependent(generator), is(false));
+    }
+    
+}
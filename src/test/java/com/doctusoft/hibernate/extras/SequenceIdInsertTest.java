@@ -0,0 +1,102 @@
+package com.doctusoft.hibernate.extras;
+
+import com.doctusoft.hibernate.extras.H2SessionFactories.RecordingStatementInspector;
+import com.google.common.collect.ImmutableMap;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.SequenceGenerator;
+import java.util.Arrays;
+
+import static com.doctusoft.hibernate.extras.H2SessionFactories.*;
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class SequenceIdInsertTest {
+    
+    private final RecordingStatementInspector statementInspector = new RecordingStatementInspector();
+    
+    private SessionFactory sessionFactory;
+    
+    @Before
+    public void createSessionFactory() {
+        sessionFactory = H2SessionFactories.create(
+            ImmutableMap.of(AvailableSettings.STATEMENT_INSPECTOR, statementInspector),
+            PooledItem.class,
+            UnpooledItem.class);
+    }
+    
+    @After
+    public void closeSessionFactory() {
+        sessionFactory.close();
+    }
+    
+    @Test
+    public void pooledSequenceIdsAreGeneratedInBlocks() {
+        HibernateMultiLineInsert multiLineInsert =
+            MultiLineInsertRegistry.create(sessionFactory).lookup(PooledItem.class);
+        assertThat(multiLineInsert, notNullValue());
+        PooledItem[] items = new PooledItem[120];
+        for (int i = 0; i < items.length; ++i) {
+            items[i] = new PooledItem("item" + i);
+        }
+        statementInspector.clear();
+        
+        inTransaction(sessionFactory, session -> multiLineInsert.insertInBatch(session, items));
+        
+        assertThat(statementInspector.statementsStartingWith("insert"), hasSize(1));
+        // one sequence call per block of allocationSize ids, and one more for the start of the first block
+        assertThat(statementInspector.statementsStartingWith("call next value"), hasSize(lessThanOrEqualTo(4)));
+        assertThat(Arrays.stream(items).map(item -> item.id).distinct().count(), is(120L));
+        inTransaction(sessionFactory, session -> {
+            assertThat(count(session, PooledItem.class), is(120L));
+            for (PooledItem item : items) {
+                assertThat(session.get(PooledItem.class, item.id).name, is(item.name));
+            }
+        });
+    }
+    
+    @Test
+    public void unpooledSequencesAreNotSupported() {
+        assertThat(MultiLineInsertRegistry.create(sessionFactory).lookup(UnpooledItem.class), nullValue());
+    }
+    
+    @Entity
+    public static class PooledItem {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pooled_item_seq")
+        @SequenceGenerator(name = "pooled_item_seq", sequenceName = "pooled_item_seq", allocationSize = 50)
+        Long id;
+        
+        String name;
+        
+        PooledItem() {
+        }
+        
+        PooledItem(String name) {
+            this.name = name;
+        }
+        
+    }
+    
+    @Entity
+    public static class UnpooledItem {
+        
+        @Id
+        @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "unpooled_item_seq")
+        @SequenceGenerator(name = "unpooled_item_seq", sequenceName = "unpooled_item_seq", allocationSize = 1)
+        Long id;
+        
+        String name;
+        
+    }
+    
+}